@@ -0,0 +1,112 @@
+package tech.automationqa.testrail.benchmark;
+
+import com.intuit.karate.core.ScenarioResult;
+import tech.automationqa.testrail.testrail.ConfigSnapshot;
+import tech.automationqa.testrail.testrail.TestrailProperty;
+import tech.automationqa.testrail.testrail.apiClient.APIClient;
+import tech.automationqa.testrail.testrail.services.TestRailService;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Publishes synthetic results end to end, through {@link TestRailService} and a real HTTP client, to a
+ * {@link TestRailStub}, and prints the wall time, the number of requests and the heap high-water mark of each run.
+ * A new run is created in the stub for every size, and the suite holds one case per result, so the cases are
+ * downloaded page by page as they would be from TestRail.
+ * <p>
+ * Arguments are the numbers of results, 1000, 10000 and 50000 by default, and the options {@code --latency=<ms>},
+ * {@code --error-rate=<0..1>}, {@code --throttle-rate=<0..1>}, {@code --retry-after=<s>}, {@code --batch=<n>},
+ * {@code --threads=<n>}, {@code --transport=httpclient|urlconnection} and {@code --gzip=true|false}.
+ */
+public final class PublishThroughput {
+    private static final List<String> OPTIONS = List.of("latency", "error-rate", "throttle-rate", "retry-after", "batch", "threads", "transport", "gzip");
+
+    private PublishThroughput() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<Integer> sizes = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=") && OPTIONS.contains(arg.substring(2, arg.indexOf('=')))) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.matches("\\d+")) {
+                sizes.add(Integer.parseInt(arg));
+            } else {
+                throw new IllegalArgumentException("Unknown argument " + arg + ", expected result counts and --" + String.join("=, --", OPTIONS) + "=");
+            }
+        }
+        if (sizes.isEmpty()) {
+            sizes = List.of(1000, 10000, 50000);
+        }
+
+        List<String> rows = new ArrayList<>();
+        rows.add(String.format("%10s %10s %10s %10s %10s %10s %8s %8s %12s %12s", "results", "accepted", "wall ms", "results/s", "requests",
+                "KB sent", "429s", "500s", "heap base MB", "heap peak MB"));
+        for (int size : sizes) {
+            rows.add(publish(size, options));
+        }
+        System.out.println();
+        System.out.println("Publishing throughput, options " + options);
+        rows.forEach(System.out::println);
+    }
+
+    private static String publish(int size, Map<String, String> options) throws Exception {
+        List<ScenarioResult> results = SyntheticResults.scenarioResults(size);
+        try (TestRailStub stub = TestRailStub.builder()
+                .cases(size)
+                .latencyMillis(Long.parseLong(options.getOrDefault("latency", "0")))
+                .errorRate(Double.parseDouble(options.getOrDefault("error-rate", "0")))
+                .throttleRate(Double.parseDouble(options.getOrDefault("throttle-rate", "0")))
+                .retryAfterSeconds(Integer.parseInt(options.getOrDefault("retry-after", "1")))
+                .start()) {
+            ConfigSnapshot config = configuration(stub, options);
+            APIClient client = TestRailService.createClient(stub.getBaseUrl(), config);
+            TestRailService service = new TestRailService(client, config);
+
+            List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                    .filter(pool -> pool.getType() == MemoryType.HEAP)
+                    .collect(Collectors.toList());
+            System.gc();
+            long baseHeapBytes = heapPools.stream().mapToLong(pool -> pool.getUsage().getUsed()).sum();
+            heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+            long start = System.nanoTime();
+            service.addResultsToTestRail(results::stream, null);
+            long wallMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+
+            // Upper bound of the peak, as each pool peaks at its own moment
+            long peakHeapBytes = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+            System.out.println("Requests by endpoint for " + size + " results: " + stub.getRequestsByEndpoint() + ", client: " + client.getStats());
+            return String.format("%10d %10d %10d %10d %10d %10d %8d %8d %12d %12d", size, stub.getResults(), wallMillis, size * 1000L / wallMillis,
+                    stub.getRequests(), stub.getBytesReceived() >> 10, stub.getInjectedThrottles(), stub.getInjectedErrors(), baseHeapBytes >> 20, peakHeapBytes >> 20);
+        }
+    }
+
+    private static ConfigSnapshot configuration(TestRailStub stub, Map<String, String> options) {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put(TestrailProperty.BASE_URL, stub.getBaseUrl());
+        settings.put(TestrailProperty.USERNAME, "stub");
+        settings.put(TestrailProperty.PASSWORD, "stub");
+        settings.put(TestrailProperty.PROJECT_ID, 1);
+        settings.put(TestrailProperty.TEST_SUITE_ID, 1);
+        settings.put(TestrailProperty.RUN_NEW, true);
+        settings.put(TestrailProperty.RUN_NAME, "Throughput");
+        settings.put(TestrailProperty.RESULTS_BATCH_SIZE, Integer.parseInt(options.getOrDefault("batch", "250")));
+        settings.put(TestrailProperty.RESULTS_UPLOAD_THREADS, Integer.parseInt(options.getOrDefault("threads", "4")));
+        settings.put(TestrailProperty.HTTP_TRANSPORT, options.getOrDefault("transport", "httpclient"));
+        settings.put(TestrailProperty.HTTP_REQUEST_GZIP, Boolean.parseBoolean(options.getOrDefault("gzip", "false")));
+        settings.put(TestrailProperty.RETRY_BASE_DELAY, 50);
+        settings.put(TestrailProperty.METRICS_ENABLED, false);
+        return ConfigSnapshot.of(Collections.singletonMap(ConfigSnapshot.DEFAULT_PROFILE, settings), null,
+                Collections.emptyMap(), Collections.emptyMap());
+    }
+}
@@ -0,0 +1,120 @@
+package tech.automationqa.testrail.benchmark;
+
+import com.intuit.karate.core.ScenarioResult;
+import tech.automationqa.testrail.testrail.ConfigSnapshot;
+import tech.automationqa.testrail.testrail.TestrailProperty;
+import tech.automationqa.testrail.testrail.apiClient.APIClient;
+import tech.automationqa.testrail.testrail.services.TestRailService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Publishes synthetic results from several shards at once, each with its own {@link TestRailService} and HTTP
+ * client, to one {@link TestRailStub}, the way the machines of a split CI build would. All shards start together,
+ * so they race to create the shared run, and each closes the plan once its share is uploaded. The harness prints
+ * the runs left in the stub, the runs deleted again, how often the plan was closed and the results accepted; a
+ * correct run leaves a single run, closes the plan once and accepts every result.
+ * <p>
+ * Options are {@code --shards=<n>} (20 by default), {@code --results=<n>} (10000), {@code --plan=true|false},
+ * {@code --lock-dir=<path>} to coordinate through lock files instead of the run description, and
+ * {@code --latency=<ms>}.
+ */
+public final class ShardedPublish {
+    private static final List<String> OPTIONS = List.of("shards", "results", "plan", "lock-dir", "latency");
+    private static final int PLAN_ID = 7;
+
+    private ShardedPublish() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=") && OPTIONS.contains(arg.substring(2, arg.indexOf('=')))) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                throw new IllegalArgumentException("Unknown argument " + arg + ", expected --" + String.join("=, --", OPTIONS) + "=");
+            }
+        }
+        int shards = Integer.parseInt(options.getOrDefault("shards", "20"));
+        int size = Integer.parseInt(options.getOrDefault("results", "10000"));
+        List<ScenarioResult> results = SyntheticResults.scenarioResults(size);
+
+        try (TestRailStub stub = TestRailStub.builder()
+                .cases(size)
+                .latencyMillis(Long.parseLong(options.getOrDefault("latency", "0")))
+                .start()) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int index = 1; index <= shards; index++) {
+                ConfigSnapshot config = configuration(stub, options, index, shards);
+                int shard = index;
+                Thread thread = new Thread(() -> {
+                    List<ScenarioResult> share = new ArrayList<>();
+                    for (int i = shard - 1; i < results.size(); i += shards) {
+                        share.add(results.get(i));
+                    }
+                    APIClient client = TestRailService.createClient(stub.getBaseUrl(), config);
+                    TestRailService service = new TestRailService(client, config);
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    service.addResultsToTestRail(share::stream, null);
+                    service.closeTestPlanIfRequired();
+                }, "shard-" + index);
+                thread.start();
+                threads.add(thread);
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long wallMillis = (System.nanoTime() - begin) / 1_000_000;
+
+            System.out.println();
+            System.out.println("Sharded publishing, options " + options);
+            System.out.println("Runs left:        " + stub.getRuns());
+            System.out.println("Runs deleted:     " + stub.getDeletedRuns());
+            System.out.println("Plan closed:      " + stub.getClosedPlans() + " times");
+            System.out.println("Results accepted: " + stub.getResults() + " of " + size);
+            System.out.println("Wall time:        " + wallMillis + " ms");
+            System.out.println("Requests:         " + stub.getRequestsByEndpoint());
+            stub.getRuns().keySet().forEach(runId -> System.out.println("Description of run " + runId + ": "
+                    + stub.getRunDescription(runId).replace("\n", ", ")));
+        }
+    }
+
+    private static ConfigSnapshot configuration(TestRailStub stub, Map<String, String> options, int index, int shards) {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put(TestrailProperty.BASE_URL, stub.getBaseUrl());
+        settings.put(TestrailProperty.USERNAME, "stub");
+        settings.put(TestrailProperty.PASSWORD, "stub");
+        settings.put(TestrailProperty.PROJECT_ID, 1);
+        settings.put(TestrailProperty.TEST_SUITE_ID, 1);
+        settings.put(TestrailProperty.RUN_NEW, true);
+        settings.put(TestrailProperty.RUN_NAME, "Sharded");
+        if (Boolean.parseBoolean(options.getOrDefault("plan", "true"))) {
+            settings.put(TestrailProperty.TEST_PLAN_ID, PLAN_ID);
+            settings.put(TestrailProperty.CLOSE_TEST_PLAN, true);
+        }
+        settings.put(TestrailProperty.SHARD_INDEX, index);
+        settings.put(TestrailProperty.SHARD_COUNT, shards);
+        settings.put(TestrailProperty.SHARD_RUN_KEY, "build-42");
+        if (options.containsKey("lock-dir")) {
+            settings.put(TestrailProperty.SHARD_LOCK_DIR, options.get("lock-dir"));
+        }
+        settings.put(TestrailProperty.RETRY_BASE_DELAY, 50);
+        settings.put(TestrailProperty.METRICS_ENABLED, false);
+        return ConfigSnapshot.of(Collections.singletonMap(ConfigSnapshot.DEFAULT_PROFILE, settings), null,
+                Collections.emptyMap(), Collections.emptyMap());
+    }
+}
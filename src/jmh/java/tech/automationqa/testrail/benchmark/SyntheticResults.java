@@ -0,0 +1,106 @@
+package tech.automationqa.testrail.benchmark;
+
+import com.intuit.karate.core.Feature;
+import com.intuit.karate.core.FeatureSection;
+import com.intuit.karate.core.Result;
+import com.intuit.karate.core.Scenario;
+import com.intuit.karate.core.ScenarioResult;
+import com.intuit.karate.core.Step;
+import com.intuit.karate.core.StepResult;
+import com.intuit.karate.resource.MemoryResource;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds synthetic Karate results and canned TestRail payloads for the benchmarks. Every scenario shares the same
+ * parsed steps, so fixtures of 100k scenarios stay cheap to set up; one scenario in every {@code FAILURE_EVERY}
+ * fails on its last step.
+ */
+public final class SyntheticResults {
+    public static final int FAILURE_EVERY = 20;
+    private static final String FEATURE = "Feature: synthetic\n\n"
+            + "  Scenario: template\n"
+            + "    * url 'http://localhost:8080'\n"
+            + "    * path 'books/v3/lists/names.json'\n"
+            + "    * param api-key = 'key'\n"
+            + "    * method get\n"
+            + "    * status 200\n"
+            + "    * match response.status == 'OK'\n"
+            + "    * match response.copyright == '#string'\n"
+            + "    * match response.num_results == '#number'\n"
+            + "    * def names = get response.results[*].list_name\n"
+            + "    * print names\n";
+
+    private SyntheticResults() {
+    }
+
+    /**
+     * @param count The number of scenarios.
+     * @return Results for scenarios titled {@code Scenario <i>}, each with ten steps.
+     */
+    public static List<ScenarioResult> scenarioResults(int count) {
+        Feature feature = Feature.read(new MemoryResource(new File("synthetic.feature"), FEATURE));
+        FeatureSection section = feature.getSection(0);
+        List<Step> steps = section.getScenario().getSteps();
+        RuntimeException error = new RuntimeException("match failed: $.status | expected 'OK' but was 'ERROR'");
+
+        List<ScenarioResult> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Scenario scenario = new Scenario(feature, section, -1);
+            scenario.setName(title(i));
+            scenario.setSteps(steps);
+            ScenarioResult result = new ScenarioResult(scenario);
+            boolean fails = i % FAILURE_EVERY == 0;
+            for (int s = 0; s < steps.size(); s++) {
+                Step step = steps.get(s);
+                boolean last = s == steps.size() - 1;
+                result.addStepResult(new StepResult(step, fails && last ? Result.failed(2_000_000, error, step) : Result.passed(1_000_000)));
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * @param results The results whose step lists are returned.
+     * @return The step results of every scenario.
+     */
+    public static List<List<StepResult>> stepResults(List<ScenarioResult> results) {
+        List<List<StepResult>> steps = new ArrayList<>(results.size());
+        results.forEach(result -> steps.add(result.getStepResults()));
+        return steps;
+    }
+
+    /**
+     * @param count The number of cases.
+     * @return A {@code get_cases} response body, in the paginated envelope, with one case per synthetic scenario.
+     */
+    public static String casesPayload(int count) {
+        JSONArray cases = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            JSONArray steps = new JSONArray();
+            steps.put(new JSONObject().put("content", "Call the names endpoint").put("expected", "Status 200"));
+            cases.put(new JSONObject()
+                    .put("id", i + 1)
+                    .put("title", title(i))
+                    .put("section_id", 1 + i % 50)
+                    .put("template_id", 2)
+                    .put("type_id", 7)
+                    .put("priority_id", 2)
+                    .put("refs", JSONObject.NULL)
+                    .put("created_on", 1700000000)
+                    .put("updated_on", 1700000000)
+                    .put("custom_steps_separated", steps));
+        }
+        JSONObject links = new JSONObject().put("next", JSONObject.NULL).put("prev", JSONObject.NULL);
+        return new JSONObject().put("offset", 0).put("limit", count).put("size", count).put("_links", links).put("cases", cases).toString();
+    }
+
+    public static String title(int index) {
+        return "Scenario " + index;
+    }
+}
@@ -0,0 +1,570 @@
+package tech.automationqa.testrail.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An offline stand-in for the TestRail API, so that publishing can be load-tested without a TestRail instance. It
+ * serves a synthetic suite whose cases are titled like the {@link SyntheticResults} scenarios and implements the
+ * endpoints the publisher uses: {@code get_run}, {@code get_runs}, {@code get_plan}, {@code get_cases},
+ * {@code get_sections}, {@code get_tests}, {@code add_run}, {@code add_plan_entry}, {@code update_run},
+ * {@code update_run_in_plan_entry}, {@code update_plan_entry}, {@code delete_run}, {@code delete_plan_entry},
+ * {@code add_results_for_cases} and {@code close_plan}. The lists are paginated like TestRail 6.7+. Runs and plan
+ * entries keep their name and description, so several publishers can share them.
+ * <p>
+ * Every request is delayed by the configured latency, and a share of them can be answered with
+ * {@code 429 Too Many Requests} (with a {@code Retry-After}) or {@code 500 Internal Server Error} before they are
+ * processed, so a retried request is never applied twice. Request bodies may be gzip-compressed. The stub counts
+ * the requests per endpoint, the bytes they carried and the results it accepted.
+ */
+public final class TestRailStub implements AutoCloseable {
+    private static final int PAGE_SIZE = 250;
+    private static final int SECTIONS = 50;
+    private static final String API_PREFIX = "/api/v2/";
+
+    private final int cases;
+    private final long latencyMillis;
+    private final double errorRate;
+    private final double throttleRate;
+    private final int retryAfterSeconds;
+    private final Random random;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> runCases = new ConcurrentHashMap<>();
+    private final Map<Integer, JSONObject> runs = new ConcurrentHashMap<>();
+    private final Map<Integer, List<JSONObject>> planEntries = new ConcurrentHashMap<>();
+    private final LongAdder deletedRuns = new LongAdder();
+    private final LongAdder closedPlans = new LongAdder();
+    private final LongAdder results = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder injectedErrors = new LongAdder();
+    private final LongAdder injectedThrottles = new LongAdder();
+    private final AtomicInteger nextRunId = new AtomicInteger(1000);
+    private final AtomicLong nextResultId = new AtomicLong(1);
+
+    private TestRailStub(Builder builder) throws IOException {
+        this.cases = builder.cases;
+        this.latencyMillis = builder.latencyMillis;
+        this.errorRate = builder.errorRate;
+        this.throttleRate = builder.throttleRate;
+        this.retryAfterSeconds = builder.retryAfterSeconds;
+        this.random = new Random(builder.seed);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "testrail-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The base URL to create the API client with.
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * @return The number of requests received, including the rejected ones.
+     */
+    public long getRequests() {
+        return requests.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    /**
+     * @return The number of requests received per endpoint, such as {@code add_results_for_cases}.
+     */
+    public Map<String, Long> getRequestsByEndpoint() {
+        Map<String, Long> counts = new TreeMap<>();
+        requests.forEach((endpoint, count) -> counts.put(endpoint, count.sum()));
+        return counts;
+    }
+
+    /**
+     * @return The number of results accepted by {@code add_results_for_cases}.
+     */
+    public long getResults() {
+        return results.sum();
+    }
+
+    /**
+     * @return The number of request body bytes received, as sent on the wire.
+     */
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /**
+     * @return The names of the runs that were created and not deleted, keyed by their ID.
+     */
+    public Map<Integer, String> getRuns() {
+        Map<Integer, String> names = new TreeMap<>();
+        runs.forEach((runId, run) -> names.put(runId, run.optString("name")));
+        return names;
+    }
+
+    /**
+     * @return The description of a run, or an empty string if it has none.
+     */
+    public String getRunDescription(int runId) {
+        JSONObject run = runs.get(runId);
+        return run == null ? "" : run.optString("description", "");
+    }
+
+    public long getDeletedRuns() {
+        return deletedRuns.sum();
+    }
+
+    /**
+     * @return The number of {@code close_plan} requests that were processed.
+     */
+    public long getClosedPlans() {
+        return closedPlans.sum();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.sum();
+    }
+
+    public long getInjectedThrottles() {
+        return injectedThrottles.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] requestBody = exchange.getRequestBody().readAllBytes();
+            bytesReceived.add(requestBody.length);
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                requestBody = new GZIPInputStream(new ByteArrayInputStream(requestBody)).readAllBytes();
+            }
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query == null || !query.startsWith(API_PREFIX)) {
+                respond(exchange, 404, error("Unknown method"));
+                return;
+            }
+            String[] path = query.substring(API_PREFIX.length()).split("&")[0].split("/");
+            String endpoint = path[0];
+            requests.computeIfAbsent(endpoint, name -> new LongAdder()).increment();
+            pause();
+
+            double draw = random.nextDouble();
+            if (draw < throttleRate) {
+                injectedThrottles.increment();
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+                respond(exchange, 429, error("API Rate Limit Exceeded"));
+                return;
+            }
+            if (draw < throttleRate + errorRate) {
+                injectedErrors.increment();
+                respond(exchange, 500, error("Injected failure"));
+                return;
+            }
+
+            Map<String, String> parameters = parameters(query);
+            String id = path.length > 1 ? path[1] : "0";
+            String body = new String(requestBody, StandardCharsets.UTF_8);
+            switch (endpoint) {
+                case "get_run":
+                    respond(exchange, 200, run(Integer.parseInt(id)).toString());
+                    break;
+                case "get_runs":
+                    respond(exchange, 200, runsPage(query, parameters));
+                    break;
+                case "get_plan":
+                    respond(exchange, 200, plan(Integer.parseInt(id)).toString());
+                    break;
+                case "get_cases":
+                    respond(exchange, 200, casesPage(query, parameters));
+                    break;
+                case "get_sections":
+                    respond(exchange, 200, sectionsPage(query, parameters));
+                    break;
+                case "get_tests":
+                    respond(exchange, 200, testsPage(Integer.parseInt(id), query, parameters));
+                    break;
+                case "add_run":
+                    respond(exchange, 200, addRun(new JSONObject(body)).toString());
+                    break;
+                case "add_plan_entry":
+                    respond(exchange, 200, addPlanEntry(Integer.parseInt(id), new JSONObject(body)).toString());
+                    break;
+                case "update_run":
+                case "update_run_in_plan_entry":
+                    respond(exchange, 200, updateRun(Integer.parseInt(id), new JSONObject(body)).toString());
+                    break;
+                case "update_plan_entry":
+                    respond(exchange, 200, updatePlanEntry(Integer.parseInt(id), path[2], new JSONObject(body)).toString());
+                    break;
+                case "delete_run":
+                    deleteRun(Integer.parseInt(id));
+                    respond(exchange, 200, "");
+                    break;
+                case "delete_plan_entry":
+                    deletePlanEntry(Integer.parseInt(id), path[2]);
+                    respond(exchange, 200, "");
+                    break;
+                case "add_results_for_cases":
+                    respond(exchange, 200, addResults(new JSONObject(body)).toString());
+                    break;
+                case "close_plan":
+                    closedPlans.increment();
+                    respond(exchange, 200, new JSONObject().put("id", Integer.parseInt(id)).put("is_completed", true).toString());
+                    break;
+                default:
+                    respond(exchange, 400, error("Unknown method '" + endpoint + "'"));
+            }
+        } catch (RuntimeException e) {
+            respond(exchange, 400, error(String.valueOf(e.getMessage())));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Describes a run. Runs the stub did not create, such as a configured {@code test.run.id}, exist as well.
+     */
+    private JSONObject run(int runId) {
+        JSONObject stored = runs.get(runId);
+        JSONObject run = stored == null
+                ? new JSONObject().put("suite_id", 1).put("plan_id", JSONObject.NULL)
+                : new JSONObject(stored, JSONObject.getNames(stored));
+        return run.put("id", runId)
+                .put("include_all", !runCases.containsKey(runId))
+                .put("is_completed", false);
+    }
+
+    private JSONObject addRun(JSONObject body) {
+        int runId = nextRunId.incrementAndGet();
+        runs.put(runId, new JSONObject()
+                .put("name", body.optString("name"))
+                .put("description", body.optString("description", ""))
+                .put("suite_id", body.optInt("suite_id", 1))
+                .put("plan_id", JSONObject.NULL));
+        if (!body.optBoolean("include_all", true)) {
+            runCases.put(runId, ConcurrentHashMap.newKeySet());
+            updateRun(runId, body);
+        }
+        return run(runId);
+    }
+
+    private JSONObject addPlanEntry(int planId, JSONObject body) {
+        String entryId = UUID.randomUUID().toString();
+        JSONArray configurations = body.optJSONArray("runs");
+        int count = configurations == null || configurations.length() == 0 ? 1 : configurations.length();
+        List<Integer> runIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int runId = addRun(body).getInt("id");
+            JSONObject run = runs.get(runId).put("plan_id", planId).put("entry_id", entryId);
+            if (configurations != null && i < configurations.length()) {
+                run.put("config_ids", configurations.getJSONObject(i).optJSONArray("config_ids"));
+            }
+            runIds.add(runId);
+        }
+        JSONObject entry = new JSONObject().put("id", entryId).put("name", body.optString("name")).put("suite_id", body.optInt("suite_id", 1)).put("run_ids", runIds);
+        planEntries.computeIfAbsent(planId, plan -> new CopyOnWriteArrayList<>()).add(entry);
+        return entry(entry);
+    }
+
+    private JSONObject plan(int planId) {
+        JSONArray entries = new JSONArray();
+        planEntries.getOrDefault(planId, List.of()).forEach(entry -> entries.put(entry(entry)));
+        return new JSONObject().put("id", planId).put("is_completed", false).put("entries", entries);
+    }
+
+    private JSONObject entry(JSONObject entry) {
+        JSONArray entryRuns = new JSONArray();
+        JSONArray runIds = entry.getJSONArray("run_ids");
+        for (int i = 0; i < runIds.length(); i++) {
+            entryRuns.put(run(runIds.getInt(i)));
+        }
+        return new JSONObject().put("id", entry.getString("id")).put("name", entry.getString("name")).put("suite_id", entry.getInt("suite_id")).put("runs", entryRuns);
+    }
+
+    private JSONObject updateRun(int runId, JSONObject body) {
+        JSONArray caseIds = body.optJSONArray("case_ids");
+        if (caseIds != null) {
+            Set<Integer> selection = ConcurrentHashMap.newKeySet();
+            for (int i = 0; i < caseIds.length(); i++) {
+                selection.add(caseIds.getInt(i));
+            }
+            runCases.put(runId, selection);
+        }
+        JSONObject stored = runs.get(runId);
+        if (stored != null && body.has("description")) {
+            stored.put("description", body.getString("description"));
+        }
+        return run(runId);
+    }
+
+    private JSONObject updatePlanEntry(int planId, String entryId, JSONObject body) {
+        JSONObject entry = findEntry(planId, entryId);
+        JSONArray runIds = entry.getJSONArray("run_ids");
+        for (int i = 0; i < runIds.length(); i++) {
+            updateRun(runIds.getInt(i), body);
+        }
+        return entry(entry);
+    }
+
+    private void deleteRun(int runId) {
+        JSONObject run = runs.get(runId);
+        if (run == null || !JSONObject.NULL.equals(run.get("plan_id"))) {
+            throw new IllegalArgumentException("Field :run_id is not a valid test run.");
+        }
+        runs.remove(runId);
+        runCases.remove(runId);
+        deletedRuns.increment();
+    }
+
+    private void deletePlanEntry(int planId, String entryId) {
+        JSONObject entry = findEntry(planId, entryId);
+        planEntries.get(planId).remove(entry);
+        JSONArray runIds = entry.getJSONArray("run_ids");
+        for (int i = 0; i < runIds.length(); i++) {
+            runs.remove(runIds.getInt(i));
+            runCases.remove(runIds.getInt(i));
+            deletedRuns.increment();
+        }
+    }
+
+    private JSONObject findEntry(int planId, String entryId) {
+        return planEntries.getOrDefault(planId, List.of()).stream()
+                .filter(entry -> entry.getString("id").equals(entryId))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Field :entry_id is not a valid plan entry."));
+    }
+
+    private JSONArray addResults(JSONObject body) {
+        JSONArray received = body.getJSONArray("results");
+        JSONArray created = new JSONArray();
+        for (int i = 0; i < received.length(); i++) {
+            JSONObject result = received.getJSONObject(i);
+            created.put(new JSONObject()
+                    .put("id", nextResultId.getAndIncrement())
+                    .put("test_id", result.getInt("case_id"))
+                    .put("status_id", result.optInt("status_id", 1)));
+        }
+        results.add(received.length());
+        return created;
+    }
+
+    private String runsPage(String query, Map<String, String> parameters) {
+        int offset = Integer.parseInt(parameters.getOrDefault("offset", "0"));
+        int suiteId = Integer.parseInt(parameters.getOrDefault("suite_id", "0"));
+        List<JSONObject> projectRuns = new ArrayList<>();
+        new TreeMap<>(runs).forEach((runId, run) -> {
+            if (JSONObject.NULL.equals(run.get("plan_id")) && (suiteId == 0 || run.getInt("suite_id") == suiteId)) {
+                projectRuns.add(run(runId));
+            }
+        });
+        int end = Math.min(projectRuns.size(), offset + PAGE_SIZE);
+        return page("runs", new JSONArray(projectRuns.subList(Math.min(offset, end), end)), query, offset, end < projectRuns.size());
+    }
+
+    private String casesPage(String query, Map<String, String> parameters) {
+        int offset = Integer.parseInt(parameters.getOrDefault("offset", "0"));
+        int end = Math.min(cases, offset + PAGE_SIZE);
+        JSONArray page = new JSONArray();
+        for (int i = offset; i < end; i++) {
+            page.put(testCase(i));
+        }
+        return page("cases", page, query, offset, end < cases);
+    }
+
+    private String sectionsPage(String query, Map<String, String> parameters) {
+        int offset = Integer.parseInt(parameters.getOrDefault("offset", "0"));
+        int end = Math.min(SECTIONS, offset + PAGE_SIZE);
+        JSONArray page = new JSONArray();
+        for (int i = offset; i < end; i++) {
+            page.put(new JSONObject().put("id", i + 1).put("name", "Section " + (i + 1)).put("suite_id", 1).put("depth", 0));
+        }
+        return page("sections", page, query, offset, end < SECTIONS);
+    }
+
+    private String testsPage(int runId, String query, Map<String, String> parameters) {
+        int offset = Integer.parseInt(parameters.getOrDefault("offset", "0"));
+        Set<Integer> selection = runCases.get(runId);
+        int[] caseIds = selection == null
+                ? IntStream.rangeClosed(1, cases).toArray()
+                : selection.stream().mapToInt(Integer::intValue).sorted().toArray();
+        int end = Math.min(caseIds.length, offset + PAGE_SIZE);
+        JSONArray page = new JSONArray();
+        for (int i = offset; i < end; i++) {
+            page.put(new JSONObject().put("id", runId * 100_000L + caseIds[i]).put("case_id", caseIds[i]).put("run_id", runId).put("status_id", 3));
+        }
+        return page("tests", page, query, offset, end < caseIds.length);
+    }
+
+    private static JSONObject testCase(int index) {
+        JSONArray steps = new JSONArray();
+        steps.put(new JSONObject().put("content", "Call the names endpoint").put("expected", "Status 200"));
+        return new JSONObject()
+                .put("id", index + 1)
+                .put("title", SyntheticResults.title(index))
+                .put("section_id", 1 + index % SECTIONS)
+                .put("template_id", 2)
+                .put("type_id", 7)
+                .put("priority_id", 2)
+                .put("refs", JSONObject.NULL)
+                .put("created_on", 1700000000)
+                .put("updated_on", 1700000000)
+                .put("custom_steps_separated", steps);
+    }
+
+    /**
+     * Wraps a page in the envelope of TestRail 6.7+, with a {@code next} link that repeats the query with the
+     * following offset.
+     */
+    private static String page(String field, JSONArray page, String query, int offset, boolean more) {
+        Object next = JSONObject.NULL;
+        if (more) {
+            next = query.replaceAll("&(offset|limit)=[^&]*", "") + "&limit=" + PAGE_SIZE + "&offset=" + (offset + PAGE_SIZE);
+        }
+        JSONObject links = new JSONObject().put("next", next).put("prev", JSONObject.NULL);
+        return new JSONObject().put("offset", offset).put("limit", PAGE_SIZE).put("size", page.length()).put("_links", links).put(field, page).toString();
+    }
+
+    private static Map<String, String> parameters(String query) {
+        Map<String, String> parameters = new TreeMap<>();
+        String[] parts = query.split("&");
+        for (int i = 1; i < parts.length; i++) {
+            int separator = parts[i].indexOf('=');
+            if (separator > 0) {
+                parameters.put(parts[i].substring(0, separator), parts[i].substring(separator + 1));
+            }
+        }
+        return parameters;
+    }
+
+    private void pause() {
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String error(String message) {
+        return new JSONObject().put("error", message).toString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Builder of a {@link TestRailStub}.
+     */
+    public static final class Builder {
+        private int cases = 1000;
+        private long latencyMillis;
+        private double errorRate;
+        private double throttleRate;
+        private int retryAfterSeconds = 1;
+        private long seed = 42;
+
+        private Builder() {
+        }
+
+        /**
+         * @param cases The number of cases in the suite, titled {@code Scenario 0} to {@code Scenario <cases - 1>}.
+         */
+        public Builder cases(int cases) {
+            this.cases = cases;
+            return this;
+        }
+
+        /**
+         * @param latencyMillis The time every request takes before it is answered.
+         */
+        public Builder latencyMillis(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+            return this;
+        }
+
+        /**
+         * @param errorRate The share of requests, from 0 to 1, answered with {@code 500}.
+         */
+        public Builder errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        /**
+         * @param throttleRate The share of requests, from 0 to 1, answered with {@code 429}.
+         */
+        public Builder throttleRate(double throttleRate) {
+            this.throttleRate = throttleRate;
+            return this;
+        }
+
+        /**
+         * @param retryAfterSeconds The {@code Retry-After} of the throttled requests.
+         */
+        public Builder retryAfterSeconds(int retryAfterSeconds) {
+            this.retryAfterSeconds = retryAfterSeconds;
+            return this;
+        }
+
+        /**
+         * @param seed The seed of the draws that decide which requests fail, so a run can be repeated.
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @return A stub listening on a free port of the loopback interface.
+         * @throws IOException If the server cannot be started.
+         */
+        public TestRailStub start() throws IOException {
+            return new TestRailStub(this);
+        }
+    }
+}
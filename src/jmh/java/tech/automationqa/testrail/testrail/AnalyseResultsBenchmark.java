@@ -0,0 +1,78 @@
+package tech.automationqa.testrail.testrail;
+
+import com.intuit.karate.core.StepResult;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import tech.automationqa.testrail.benchmark.SyntheticResults;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-scenario cost of turning step results into a TestRail status and comment, and of building
+ * the result JSON, across a whole run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyseResultsBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int scenarios;
+
+    private List<List<StepResult>> stepResults;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stepResults = SyntheticResults.stepResults(SyntheticResults.scenarioResults(scenarios));
+    }
+
+    @Benchmark
+    public void getStepsDetails(Blackhole blackhole) {
+        for (List<StepResult> steps : stepResults) {
+            blackhole.consume(AnalyseResults.getStepsDetails(steps));
+        }
+    }
+
+    @Benchmark
+    public void summarize(Blackhole blackhole) {
+        for (List<StepResult> steps : stepResults) {
+            blackhole.consume(AnalyseResults.summarize(steps));
+        }
+    }
+
+    @Benchmark
+    public void getStepsDetailsAndBuildJson(Blackhole blackhole) {
+        int caseId = 1;
+        for (List<StepResult> steps : stepResults) {
+            Map<String, Object> details = AnalyseResults.getStepsDetails(steps);
+            JSONObject json = AnalyseResults.buildTestCaseResultJson(caseId++, (Integer) details.get("status_id"), details.get("comment").toString(), "1s");
+            blackhole.consume(json);
+        }
+    }
+
+    @Benchmark
+    public void summarizeAndBuildJson(Blackhole blackhole) {
+        int caseId = 1;
+        for (List<StepResult> steps : stepResults) {
+            StepsSummary summary = AnalyseResults.summarize(steps);
+            blackhole.consume(AnalyseResults.buildTestCaseResultJson(caseId++, summary.getStatusId(), summary.getComment(), "1s"));
+        }
+    }
+}
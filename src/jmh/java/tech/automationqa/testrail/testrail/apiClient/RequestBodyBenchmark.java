@@ -0,0 +1,90 @@
+package tech.automationqa.testrail.testrail.apiClient;
+
+import com.intuit.karate.core.ScenarioResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tech.automationqa.testrail.benchmark.SyntheticResults;
+import tech.automationqa.testrail.testrail.AnalyseResults;
+import tech.automationqa.testrail.testrail.StepsSummary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding an {@code add_results_for_cases} body: {@code toString()} and {@code getBytes()} of the org.json
+ * tree, versus {@link JsonBody} streaming it, plain or gzip-compressed, into the connection (a sink here) or into
+ * the buffer {@link HttpClientTransport} sends from. Run with {@code -prof gc}, {@code gc.alloc.rate.norm} is the
+ * memory each variant allocates per body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBodyBenchmark {
+
+    @Param({"250", "5000"})
+    public int results;
+
+    private JSONObject body;
+    private final OutputStream connection = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<ScenarioResult> scenarios = SyntheticResults.scenarioResults(results);
+        JSONArray resultList = new JSONArray();
+        for (int i = 0; i < scenarios.size(); i++) {
+            StepsSummary summary = AnalyseResults.summarize(scenarios.get(i).getStepResults());
+            resultList.put(AnalyseResults.buildTestCaseResultJson(i + 1, summary.getStatusId(), summary.getComment(), "1s"));
+        }
+        body = new JSONObject().put("results", resultList);
+    }
+
+    @Benchmark
+    public byte[] stringBody() {
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long streamedBody() throws IOException {
+        JsonBody json = new JsonBody(body, false);
+        json.writeTo(connection);
+        return json.getLastLength();
+    }
+
+    @Benchmark
+    public long streamedGzipBody() throws IOException {
+        JsonBody json = new JsonBody(body, true);
+        json.writeTo(connection);
+        return json.getLastLength();
+    }
+
+    @Benchmark
+    public byte[] bufferedGzipBody() throws IOException {
+        return new JsonBody(body, true).toByteArray();
+    }
+}
@@ -0,0 +1,65 @@
+package tech.automationqa.testrail.testrail.apiClient;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import tech.automationqa.testrail.benchmark.SyntheticResults;
+import tech.automationqa.testrail.testrail.model.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading a canned {@code get_cases} response through {@link APIClient}: fully buffered and parsed into
+ * an org.json tree by {@code readStream}/{@code parseResponse}, versus streamed through {@link PagedResults}. The
+ * transport serves the payload from memory so only the client-side cost is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseParsingBenchmark {
+    private static final String CASES_URI = "index.php?/api/v2/get_cases/1&suite_id=1";
+
+    @Param({"1000", "10000", "100000"})
+    public int cases;
+
+    private APIClient client;
+    private APIService api;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        byte[] payload = SyntheticResults.casesPayload(cases).getBytes(StandardCharsets.UTF_8);
+        HttpTransport inMemory = (method, url, authorization, body) ->
+                new TransportResponse(200, Collections.emptyMap(), new ByteArrayInputStream(payload));
+        client = new APIClient("http://localhost/", inMemory);
+        client.setUser("user").setPassword("password");
+        api = new APIService(client);
+    }
+
+    @Benchmark
+    public Object bufferedParse() {
+        return client.sendGet(CASES_URI);
+    }
+
+    @Benchmark
+    public void streamingParse(Blackhole blackhole) {
+        for (TestCase testCase : api.streamCases(1, 1)) {
+            blackhole.consume(testCase);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package tech.automationqa.testrail.testrail.services;
+
+import com.intuit.karate.core.ScenarioResult;
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tech.automationqa.testrail.benchmark.SyntheticResults;
+import tech.automationqa.testrail.testrail.AnalyseResults;
+import tech.automationqa.testrail.testrail.model.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the mapping pipeline behind {@code updateTestCasesWithExecutionResults}: indexing the suite's cases
+ * and turning every scenario result into the JSON uploaded to TestRail.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultMappingBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int scenarios;
+
+    private List<ScenarioResult> results;
+    private List<TestCase> cases;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        results = SyntheticResults.scenarioResults(scenarios);
+        cases = new ArrayList<>(scenarios);
+        for (int i = 0; i < scenarios; i++) {
+            cases.add(new TestCase(i + 1, SyntheticResults.title(i), 1, Collections.emptyList()));
+        }
+    }
+
+    @Benchmark
+    public TestCaseIndex buildIndex() {
+        return new TestCaseIndex(cases);
+    }
+
+    @Benchmark
+    public JSONArray mapResults() {
+        TestCaseIndex caseIndex = new TestCaseIndex(cases);
+        JSONArray resultList = new JSONArray();
+        for (ScenarioResult result : results) {
+            TestRailService.buildScenarioResultJson(result, caseIndex, AnalyseResults.DEFAULT_COMMENT_MAX_LENGTH).ifPresent(resultList::put);
+        }
+        return resultList;
+    }
+}
@@ -1,16 +1,20 @@
 package tech.automationqa.testrail.runner;
 
-import tech.automationqa.testrail.testrail.apiClient.APIClient;
 import tech.automationqa.testrail.testrail.services.ReportGenerator;
+import tech.automationqa.testrail.testrail.services.StreamingResultPublisher;
 import tech.automationqa.testrail.testrail.services.TestRailService;
+import com.intuit.karate.Logger;
 import com.intuit.karate.Results;
 import com.intuit.karate.Runner;
 import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import tech.automationqa.testrail.testrail.ConfigSnapshot;
+import tech.automationqa.testrail.testrail.Configuration;
 import tech.automationqa.testrail.testrail.TestrailProperty;
 
-import static tech.automationqa.testrail.testrail.Configuration.getConfigurationBoolean;
-import static tech.automationqa.testrail.testrail.Configuration.getConfigurationString;
+import java.util.concurrent.CompletableFuture;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 /**
@@ -19,36 +23,92 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
  */
 public class KarateTest {
 
+    private static final Logger LOGGER = new Logger();
     public static Results results; // Holds the results of the Karate tests after execution.
-    private static final Boolean addResults = getConfigurationBoolean(TestrailProperty.ADD_RESULTS).orElse(false); // Configuration flag to determine if test results should be added to TestRail.
-    private static final ReportGenerator reportGenerator = new ReportGenerator("target"); // Initializes a new ReportGenerator instance to generate reports.
+    private static ConfigSnapshot config; // The configuration of this run, read when the tests start.
+    private static CompletableFuture<ReportGenerator.ReportSummary> report; // The report being generated in the background, when report.async is enabled.
+    private static TestRailService testRailService; // Service used to publish the results, created only when results are added to TestRail.
+    private static StreamingResultPublisher publisher; // Uploads results while the tests run, when results.stream is enabled.
+
+    /**
+     * Before any test runs, this method reads the configuration, then resolves the TestRail run and starts streaming
+     * results to it when both {@code addResults} and {@code results.stream} are enabled.
+     */
+    @BeforeAll
+    public static void testBefore() {
+        config = Configuration.snapshot();
+        if (!isAddResults()) {
+            return;
+        }
+        try {
+            if (getTestRailService().isStreamingEnabled()) {
+                publisher = getTestRailService().startStreamingPublisher();
+            }
+        } catch (RuntimeException e) {
+            // Publishing must never stop the tests from running: without a publisher, testAfter uploads all results at the end
+            LOGGER.error("Failed to start streaming results to TestRail, they are uploaded once the tests finish: {}", e.getMessage());
+            publisher = null;
+        }
+    }
 
     /**
-     * Executes the Karate tests in parallel based on the specified tags and outputs Cucumber JSON results.
+     * Executes the Karate tests in parallel on {@code karate.threads} threads based on the specified tags and outputs Cucumber JSON results.
      * It then calls the report generator to create HTML reports from these results and asserts that there are no test failures.
      */
     @Test
     public void testParallel() {
         // Runs Karate tests in parallel and saves the results.
-        results = Runner.path("classpath:").tags("@this").outputCucumberJson(true).parallel(4);
-        // Generates the HTML report using the report directory from the results.
-        reportGenerator.generateReport(results.getReportDir());
+        Runner.Builder<?> runner = Runner.path("classpath:").tags("@this").outputCucumberJson(true);
+        if (publisher != null) {
+            runner.hook(publisher);
+        }
+        results = runner.parallel(config.getInteger(TestrailProperty.KARATE_THREADS).orElse(4));
+        // Generates the HTML report using the report directory from the results, in the background when report.async is enabled.
+        ReportGenerator reportGenerator = new ReportGenerator("target", config);
+        if (config.getBoolean(TestrailProperty.REPORT_ASYNC).orElse(false)) {
+            report = reportGenerator.generateReportAsync(results.getReportDir());
+        } else {
+            reportGenerator.generateReport(results.getReportDir());
+        }
         // Asserts that the number of failed tests is zero, throwing an exception with error messages if there are any failures.
         assertEquals(0, results.getFailCount(), results.getErrorMessages());
     }
 
     /**
      * After all tests have been run, this method is invoked to optionally upload the test results to TestRail.
-     * This operation is contingent upon the {@code addResults} configuration.
+     * This operation is contingent upon the {@code addResults} configuration. When results were streamed during the
+     * run, only the remaining tail is flushed. The timings of the upload are exported once it is done. A report
+     * generated in the background is waited for last, so it overlaps with the upload.
      */
     @AfterAll
     public static void testAfter() {
-        if (addResults) {
-            String baseUrl = getConfigurationString(TestrailProperty.BASE_URL).orElseThrow(() -> new IllegalStateException("Base URL for TestRail is not set."));
-            APIClient client = new APIClient(baseUrl);
-            TestRailService testRailService = new TestRailService(client);
-            testRailService.addResultsToTestRail(results);
-            testRailService.closeTestPlanIfRequired();
+        try {
+            if (isAddResults()) {
+                TestRailService service = getTestRailService();
+                if (publisher != null) {
+                    publisher.finish();
+                } else {
+                    service.addResultsToTestRail(results);
+                }
+                service.closeTestPlanIfRequired();
+                service.exportMetrics();
+            }
+        } finally {
+            if (report != null) {
+                report.join();
+            }
+        }
+    }
+
+    private static boolean isAddResults() {
+        return config.getBoolean(TestrailProperty.ADD_RESULTS).orElse(false);
+    }
+
+    private static TestRailService getTestRailService() {
+        if (testRailService == null) {
+            String baseUrl = config.getString(TestrailProperty.BASE_URL).orElseThrow(() -> new IllegalStateException("Base URL for TestRail is not set."));
+            testRailService = new TestRailService(TestRailService.createClient(baseUrl, config), config);
         }
+        return testRailService;
     }
 }
@@ -0,0 +1,31 @@
+package tech.automationqa.testrail.runner;
+
+import tech.automationqa.testrail.testrail.TestrailProperty;
+import tech.automationqa.testrail.testrail.services.TestRailService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static tech.automationqa.testrail.testrail.Configuration.getConfigurationString;
+
+/**
+ * The {@code PublishReport} command publishes the results of an earlier run to TestRail from its Karate or Cucumber
+ * JSON reports, without running any tests. The report directory is the first argument, {@code target/karate-reports}
+ * by default. It exits with status 1 if some reports could not be read or some results could not be uploaded.
+ */
+public class PublishReport {
+
+    public static void main(String[] args) {
+        Path reportDirectory = Paths.get(args.length > 0 ? args[0] : "target/karate-reports");
+        if (!Files.isDirectory(reportDirectory)) {
+            throw new IllegalArgumentException("Report directory " + reportDirectory + " does not exist.");
+        }
+        String baseUrl = getConfigurationString(TestrailProperty.BASE_URL).orElseThrow(() -> new IllegalStateException("Base URL for TestRail is not set."));
+        TestRailService testRailService = new TestRailService(TestRailService.createClient(baseUrl));
+        boolean published = testRailService.publishReport(reportDirectory);
+        testRailService.closeTestPlanIfRequired();
+        testRailService.exportMetrics();
+        System.exit(published ? 0 : 1);
+    }
+}
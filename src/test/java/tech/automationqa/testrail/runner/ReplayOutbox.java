@@ -0,0 +1,21 @@
+package tech.automationqa.testrail.runner;
+
+import tech.automationqa.testrail.testrail.TestrailProperty;
+import tech.automationqa.testrail.testrail.services.TestRailService;
+
+import static tech.automationqa.testrail.testrail.Configuration.getConfigurationString;
+
+/**
+ * The {@code ReplayOutbox} command sends the result batches left in the outbox by runs that could not reach
+ * TestRail, without running any tests. It exits with status 1 if some results are still pending or were rejected.
+ */
+public class ReplayOutbox {
+
+    public static void main(String[] args) {
+        String baseUrl = getConfigurationString(TestrailProperty.BASE_URL).orElseThrow(() -> new IllegalStateException("Base URL for TestRail is not set."));
+        TestRailService testRailService = new TestRailService(TestRailService.createClient(baseUrl));
+        int notSent = testRailService.replayOutbox();
+        testRailService.exportMetrics();
+        System.exit(notSent == 0 ? 0 : 1);
+    }
+}
@@ -1,5 +1,7 @@
 package tech.automationqa.testrail.testrail;
 
+import com.intuit.karate.core.Result;
+import com.intuit.karate.core.Step;
 import com.intuit.karate.core.StepResult;
 import org.json.JSONObject;
 
@@ -15,6 +17,11 @@ public class AnalyseResults {
     private static final int STATUS_SKIPPED = 2;
     private static final int STATUS_FAILED = 5;
     private final static String NEWLINE = System.lineSeparator();
+    private static final String TRUNCATED = NEWLINE + "... (truncated)";
+    public static final int DEFAULT_COMMENT_MAX_LENGTH = 10000;
+    private static final int PASSED_STEPS_CAPACITY = 1024;
+    // Reused for every scenario summarized on a thread, so passed steps are rendered without a new buffer each time.
+    private static final ThreadLocal<StringBuilder> PASSED_STEPS = ThreadLocal.withInitial(() -> new StringBuilder(PASSED_STEPS_CAPACITY));
 
     /**
      * Uses the list of stepResults to build a message and result with the format test rail expects.
@@ -23,26 +30,136 @@ public class AnalyseResults {
      * @return a map with the resultID and the message for each test
      */
     public static HashMap<String, Object> getStepsDetails(List<StepResult> stepResults) {
-        StringBuilder message = new StringBuilder();
-        int statusId = STATUS_FAILED;
+        StepsSummary summary = summarize(stepResults);
+        HashMap<String, Object> stepDetails = new HashMap<>();
+        stepDetails.put(COMMENT, summary.getComment());
+        stepDetails.put(STATUS_ID, summary.getStatusId());
+        return stepDetails;
+    }
+
+    /**
+     * Summarizes the steps of a scenario like {@link #summarize(List, int)}, cutting the comment at
+     * {@value #DEFAULT_COMMENT_MAX_LENGTH} characters.
+     *
+     * @param stepResults the stepResults it gets from the test execution.
+     * @return the status and comment for the scenario
+     */
+    public static StepsSummary summarize(List<StepResult> stepResults) {
+        return summarize(stepResults, DEFAULT_COMMENT_MAX_LENGTH);
+    }
+
+    /**
+     * Summarizes the steps of a scenario into the status and comment TestRail expects. Any failed step makes the
+     * scenario fail; otherwise any skipped step makes it skipped. The comment starts with the context of the first
+     * failed (or skipped) step, followed by the passed steps, and is cut at {@code maxLength} characters. Passed
+     * steps that no longer fit are not rendered at all.
+     *
+     * @param stepResults the stepResults it gets from the test execution.
+     * @param maxLength   the maximum length of the comment, the configured {@code results.comment.max.length}.
+     * @return the status and comment for the scenario
+     */
+    public static StepsSummary summarize(List<StepResult> stepResults, int maxLength) {
+        int commentMaxLength = Math.max(TRUNCATED.length(), maxLength);
+        StringBuilder passedSteps = PASSED_STEPS.get();
+        passedSteps.setLength(0);
+        try {
+            return summarize(stepResults, commentMaxLength, passedSteps);
+        } finally {
+            // A thread that once summarized under a large limit does not keep that buffer for the life of the JVM
+            if (passedSteps.capacity() > Math.max(PASSED_STEPS_CAPACITY, 2 * commentMaxLength)) {
+                PASSED_STEPS.remove();
+            }
+        }
+    }
+
+    private static StepsSummary summarize(List<StepResult> stepResults, int commentMaxLength, StringBuilder passedSteps) {
+        StepResult failed = null;
+        StepResult skipped = null;
+        boolean anyPassed = false;
+        boolean truncated = false;
+
         for (StepResult testStep : stepResults) {
-            String result = testStep.getResult().toString();
-            if ("passed".equals(result)) {
-                statusId = STATUS_PASSED;
-                message.append(testStep.getStep().toString()).append(NEWLINE);
-            } else if ("skip".equals(result)) {
-                statusId = STATUS_SKIPPED;
-                new StringBuilder("Skipped test at").append(NEWLINE).append(testStep.getStep().toString()).append(NEWLINE);
-            } else if ("failed".equals(result)) {
-                statusId = STATUS_FAILED;
-                new StringBuilder("Failed test at").append(NEWLINE).append(testStep.getStep().toString()).append(NEWLINE).append(testStep.getErrorMessage()).append(NEWLINE);
+            Result result = testStep.getResult();
+            if (result.isFailed()) {
+                if (failed == null) {
+                    failed = testStep;
+                }
+            } else if (result.isSkipped()) {
+                if (skipped == null) {
+                    skipped = testStep;
+                }
+            } else {
+                anyPassed = true;
+                if (!truncated) {
+                    truncated = !appendStep(passedSteps, testStep.getStep(), commentMaxLength);
+                }
             }
         }
 
-        HashMap<String, Object> stepDetails = new HashMap<>();
-        stepDetails.put(COMMENT, message.toString());
-        stepDetails.put(STATUS_ID, statusId);
-        return stepDetails;
+        int statusId = failed != null ? STATUS_FAILED : skipped != null ? STATUS_SKIPPED : anyPassed ? STATUS_PASSED : STATUS_FAILED;
+        if (failed == null && skipped == null && !truncated) {
+            return new StepsSummary(statusId, passedSteps.toString());
+        }
+        StringBuilder comment = new StringBuilder(Math.min(commentMaxLength, passedSteps.length() + 256));
+        if (failed != null) {
+            comment.append("Failed test at").append(NEWLINE);
+            appendStep(comment, failed.getStep(), commentMaxLength);
+            appendBounded(comment, failed.getErrorMessage(), commentMaxLength);
+            appendBounded(comment, NEWLINE, commentMaxLength);
+        } else if (skipped != null) {
+            comment.append("Skipped test at").append(NEWLINE);
+            appendStep(comment, skipped.getStep(), commentMaxLength);
+        }
+        int room = commentMaxLength - comment.length();
+        if (passedSteps.length() > room) {
+            comment.append(passedSteps, 0, Math.max(0, room));
+            truncated = true;
+        } else {
+            comment.append(passedSteps);
+        }
+        if (truncated) {
+            comment.setLength(Math.max(0, Math.min(comment.length(), commentMaxLength - TRUNCATED.length())));
+            comment.append(TRUNCATED);
+        }
+        return new StepsSummary(statusId, comment.toString());
+    }
+
+    /**
+     * Appends a step the way Karate prints it, stopping at the limit, so a large doc string or table is never
+     * copied beyond it.
+     *
+     * @return false if the step did not fit
+     */
+    private static boolean appendStep(StringBuilder builder, Step step, int limit) {
+        if (builder.length() >= limit) {
+            return false;
+        }
+        boolean fits = appendBounded(builder, step.getPrefix(), limit)
+                && appendBounded(builder, " ", limit)
+                && appendBounded(builder, step.getText(), limit);
+        if (fits && step.getDocString() != null) {
+            fits = appendBounded(builder, NEWLINE + "\"\"\"" + NEWLINE, limit)
+                    && appendBounded(builder, step.getDocString(), limit)
+                    && appendBounded(builder, NEWLINE + "\"\"\"", limit);
+        }
+        if (fits && step.getTable() != null) {
+            fits = appendBounded(builder, String.valueOf(step.getTable()), limit);
+        }
+        return fits && appendBounded(builder, NEWLINE, limit);
+    }
+
+    /**
+     * Appends as much of the text as fits below the limit.
+     *
+     * @return false if the text was cut
+     */
+    private static boolean appendBounded(StringBuilder builder, String text, int limit) {
+        if (text == null) {
+            return true;
+        }
+        int length = Math.min(text.length(), Math.max(0, limit - builder.length()));
+        builder.append(text, 0, length);
+        return length == text.length();
     }
 
     /**
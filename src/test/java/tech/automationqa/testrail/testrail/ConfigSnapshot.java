@@ -0,0 +1,279 @@
+package tech.automationqa.testrail.testrail;
+
+import com.intuit.karate.Logger;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The {@code ConfigSnapshot} class holds a validated, immutable view of the TestRail configuration. Values are
+ * merged once, from lowest to highest precedence, from the {@code Default} profile, the active profile, environment
+ * variables and system properties, and converted to their declared type, so lookups are plain map reads that can be
+ * shared across threads. Every problem found while converting is reported in a single exception.
+ * <p>
+ * A key such as {@code results.batch.size} can be overridden with {@code -Dresults.batch.size=500} or with the
+ * environment variable {@code TESTRAIL_RESULTS_BATCH_SIZE}.
+ */
+public final class ConfigSnapshot {
+    public static final String DEFAULT_PROFILE = "Default";
+    private static final String ENVIRONMENT_PREFIX = "TESTRAIL_";
+    private static final Logger LOGGER = new Logger();
+
+    private enum Type {STRING, BOOLEAN, INTEGER, POSITIVE_INTEGER, DECIMAL}
+
+    private static final Map<String, Type> TYPES = new HashMap<>();
+    private static final Map<String, List<String>> CHOICES = new HashMap<>();
+
+    static {
+        declare(Type.STRING, TestrailProperty.BASE_URL, TestrailProperty.USERNAME, TestrailProperty.PASSWORD,
+                TestrailProperty.TEST_PLAN_NAME, TestrailProperty.RUN_NAME, TestrailProperty.TEST_PLAN_CONFIGURATIONS,
+                TestrailProperty.FEATURE_FILES_PATH, TestrailProperty.RESULTS_OUTBOX_PATH, TestrailProperty.CACHE_DIR,
+                TestrailProperty.METRICS_DIR, TestrailProperty.EXECUTOR_MODE, TestrailProperty.METRICS_FORMAT,
+                TestrailProperty.HTTP_TRANSPORT, TestrailProperty.RESULTS_DELTA, TestrailProperty.RESULTS_DELTA_DIR,
+                TestrailProperty.ATTACHMENTS_DIR, TestrailProperty.SHARD_RUN_KEY, TestrailProperty.SHARD_LOCK_DIR);
+        declare(Type.BOOLEAN, TestrailProperty.ADD_RESULTS, TestrailProperty.TEST_PLAN_NEW, TestrailProperty.RUN_NEW,
+                TestrailProperty.CLOSE_TEST_PLAN, TestrailProperty.CREATE_FEATURE_FILES, TestrailProperty.RESULTS_STREAM,
+                TestrailProperty.RESULTS_OUTBOX_ENABLED, TestrailProperty.CACHE_ENABLED, TestrailProperty.METRICS_ENABLED,
+                TestrailProperty.METRICS_LOG_SUMMARY, TestrailProperty.ATTACHMENTS_ENABLED, TestrailProperty.REPORT_ASYNC,
+                TestrailProperty.RUN_INCLUDE_ALL, TestrailProperty.HTTP_REQUEST_GZIP);
+        declare(Type.INTEGER, TestrailProperty.TEST_SUITE_ID, TestrailProperty.TEST_RUN_ID, TestrailProperty.PROJECT_ID,
+                TestrailProperty.TEST_PLAN_ID, TestrailProperty.RETRY_MAX,
+                TestrailProperty.RETRY_BASE_DELAY, TestrailProperty.RETRY_MAX_DELAY, TestrailProperty.REPORT_LEAN_THRESHOLD);
+        declare(Type.POSITIVE_INTEGER, TestrailProperty.FEATURE_FILES_THREADS, TestrailProperty.RESULTS_BATCH_SIZE,
+                TestrailProperty.RESULTS_UPLOAD_THREADS, TestrailProperty.RESULTS_COMMENT_MAX_LENGTH,
+                TestrailProperty.RESULTS_STREAM_QUEUE_SIZE, TestrailProperty.RESULTS_STREAM_FLUSH_INTERVAL,
+                TestrailProperty.CACHE_TTL, TestrailProperty.CACHE_FULL_REFRESH, TestrailProperty.KARATE_THREADS,
+                TestrailProperty.HTTP_CONNECT_TIMEOUT, TestrailProperty.HTTP_READ_TIMEOUT, TestrailProperty.RATE_LIMIT_BURST,
+                TestrailProperty.ATTACHMENTS_THREADS, TestrailProperty.ATTACHMENTS_MAX_SIZE, TestrailProperty.REPORT_LEAN_TEXT_MAX,
+                TestrailProperty.RUN_CASE_BATCH_SIZE, TestrailProperty.REPORT_READ_THREADS,
+                TestrailProperty.SHARD_INDEX, TestrailProperty.SHARD_COUNT);
+        declare(Type.DECIMAL, TestrailProperty.RATE_LIMIT);
+        CHOICES.put(TestrailProperty.EXECUTOR_MODE, List.of("platform", "virtual"));
+        CHOICES.put(TestrailProperty.METRICS_FORMAT, List.of("both", "json", "prometheus"));
+        CHOICES.put(TestrailProperty.HTTP_TRANSPORT, List.of("httpclient", "urlconnection"));
+        CHOICES.put(TestrailProperty.RESULTS_DELTA, List.of("off", "server", "local"));
+    }
+
+    private final Map<String, Object> values;
+    private final String profile;
+    private final long loadTimeNanos;
+
+    private ConfigSnapshot(Map<String, Object> values, String profile, long loadTimeNanos) {
+        this.values = Collections.unmodifiableMap(values);
+        this.profile = profile;
+        this.loadTimeNanos = loadTimeNanos;
+    }
+
+    /**
+     * Loads a configuration file from the classpath, applying the current system properties and environment
+     * variables.
+     *
+     * @param resource The classpath resource, such as {@code /testrail-config.yml}.
+     * @param profile  The active profile, or null to use only {@code Default}.
+     * @return The snapshot; it is empty if the resource does not exist.
+     * @throws IllegalStateException If the file cannot be read or any value is invalid.
+     */
+    public static ConfigSnapshot fromClasspath(String resource, String profile) {
+        long start = System.nanoTime();
+        Map<String, Object> document = Collections.emptyMap();
+        try (InputStream stream = ConfigSnapshot.class.getResourceAsStream(resource)) {
+            if (stream == null) {
+                LOGGER.info("Configuration file is missing");
+            } else {
+                document = asMap(new Yaml().load(stream));
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("Failed to read the TestRail configuration " + resource + ": " + e.getMessage(), e);
+        }
+        Map<String, String> systemProperties = new HashMap<>();
+        System.getProperties().stringPropertyNames().forEach(name -> systemProperties.put(name, System.getProperty(name)));
+        return of(document, profile, systemProperties, System.getenv(), start);
+    }
+
+    /**
+     * Builds a snapshot from an already parsed configuration document, so several independent configurations can
+     * be used in the same JVM.
+     *
+     * @param document         The parsed YAML document, keyed by profile name.
+     * @param profile          The active profile, or null to use only {@code Default}.
+     * @param systemProperties Overrides keyed by configuration key.
+     * @param environment      Overrides keyed by {@code TESTRAIL_} followed by the upper-cased key.
+     * @return The snapshot.
+     * @throws IllegalStateException If any value is invalid.
+     */
+    public static ConfigSnapshot of(Map<String, Object> document, String profile, Map<String, String> systemProperties, Map<String, String> environment) {
+        return of(document, profile, systemProperties, environment, System.nanoTime());
+    }
+
+    private static ConfigSnapshot of(Map<String, Object> document, String profile, Map<String, String> systemProperties, Map<String, String> environment, long start) {
+        Map<String, Object> merged = new LinkedHashMap<>();
+        putAll(merged, asMap(document.get(DEFAULT_PROFILE)));
+        if (profile != null && !DEFAULT_PROFILE.equals(profile)) {
+            if (document.containsKey(profile)) {
+                putAll(merged, asMap(document.get(profile)));
+            } else {
+                LOGGER.warn("Profile {} is not defined in the TestRail configuration, using {}", profile, DEFAULT_PROFILE);
+            }
+        }
+        for (String key : TYPES.keySet()) {
+            String fromEnvironment = environment.get(environmentName(key));
+            if (fromEnvironment != null) {
+                merged.put(key, fromEnvironment);
+            }
+            String fromSystem = systemProperties.get(key);
+            if (fromSystem != null) {
+                merged.put(key, fromSystem);
+            }
+        }
+
+        List<String> errors = new ArrayList<>();
+        Map<String, Object> values = new HashMap<>();
+        merged.forEach((key, raw) -> {
+            // YAML 1.1 reads an unquoted off/on as a boolean; only keys offering those choices get them back
+            String text = raw instanceof Boolean && isOnOffChoice(key) ? ((Boolean) raw ? "on" : "off") : raw.toString().trim();
+            if (text.isEmpty()) {
+                return;
+            }
+            try {
+                values.put(key, convert(key, TYPES.getOrDefault(key, Type.STRING), text));
+            } catch (IllegalArgumentException e) {
+                errors.add(key + ": " + e.getMessage());
+            }
+        });
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException("Invalid TestRail configuration:" + System.lineSeparator() + "  - "
+                    + String.join(System.lineSeparator() + "  - ", errors));
+        }
+        return new ConfigSnapshot(values, profile, System.nanoTime() - start);
+    }
+
+    private static boolean isOnOffChoice(String key) {
+        List<String> choices = CHOICES.get(key);
+        return choices != null && (choices.contains("off") || choices.contains("on"));
+    }
+
+    /**
+     * @return The name of the environment variable overriding a key, for example {@code TESTRAIL_RESULTS_BATCH_SIZE}.
+     */
+    public static String environmentName(String key) {
+        StringBuilder name = new StringBuilder(ENVIRONMENT_PREFIX);
+        for (char c : key.toCharArray()) {
+            name.append(Character.isLetterOrDigit(c) ? Character.toUpperCase(c) : '_');
+        }
+        return name.toString();
+    }
+
+    public Optional<String> getString(String key) {
+        return Optional.ofNullable(values.get(key)).map(String::valueOf);
+    }
+
+    public Optional<Boolean> getBoolean(String key) {
+        Object value = values.get(key);
+        return value == null ? Optional.empty() : Optional.of(value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(value.toString()));
+    }
+
+    public Optional<Integer> getInteger(String key) {
+        Object value = values.get(key);
+        return value == null ? Optional.empty() : Optional.of(value instanceof Integer ? (Integer) value : Integer.valueOf(value.toString()));
+    }
+
+    public Optional<Double> getDecimal(String key) {
+        Object value = values.get(key);
+        return value == null ? Optional.empty() : Optional.of(value instanceof Double ? (Double) value : Double.valueOf(value.toString()));
+    }
+
+    /**
+     * Checks that all the given keys have a value.
+     *
+     * @param keys The keys that must be set.
+     * @throws IllegalStateException Listing every key that is missing.
+     */
+    public void require(String... keys) {
+        List<String> missing = new ArrayList<>();
+        for (String key : keys) {
+            if (!values.containsKey(key)) {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("TestRail configuration is missing " + String.join(", ", missing));
+        }
+    }
+
+    /**
+     * @return The active profile, or null if only {@code Default} is used.
+     */
+    public String getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return How long it took to read, merge and validate the configuration, in nanoseconds.
+     */
+    public long getLoadTimeNanos() {
+        return loadTimeNanos;
+    }
+
+    private static Object convert(String key, Type type, String text) {
+        switch (type) {
+            case BOOLEAN:
+                if (!"true".equalsIgnoreCase(text) && !"false".equalsIgnoreCase(text)) {
+                    throw new IllegalArgumentException("expected true or false but was '" + text + "'");
+                }
+                return Boolean.valueOf(text);
+            case INTEGER:
+            case POSITIVE_INTEGER:
+                int number;
+                try {
+                    number = new BigDecimal(text).intValueExact();
+                } catch (ArithmeticException | NumberFormatException e) {
+                    throw new IllegalArgumentException("expected a whole number but was '" + text + "'");
+                }
+                if (type == Type.POSITIVE_INTEGER && number < 1) {
+                    throw new IllegalArgumentException("must be at least 1 but was " + number);
+                }
+                return number;
+            case DECIMAL:
+                try {
+                    return Double.valueOf(text);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("expected a number but was '" + text + "'");
+                }
+            default:
+                List<String> choices = CHOICES.get(key);
+                if (choices != null && !choices.contains(text.toLowerCase(Locale.ROOT))) {
+                    throw new IllegalArgumentException("expected one of " + choices + " but was '" + text + "'");
+                }
+                return text;
+        }
+    }
+
+    private static void declare(Type type, String... keys) {
+        Arrays.stream(keys).forEach(key -> TYPES.put(key, type));
+    }
+
+    private static void putAll(Map<String, Object> target, Map<String, Object> source) {
+        // A key left empty in a profile does not hide the value of the profiles below it
+        source.forEach((key, value) -> {
+            if (value != null) {
+                target.put(key, value);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object value) {
+        return value instanceof Map ? (Map<String, Object>) value : Collections.emptyMap();
+    }
+}
@@ -1,46 +1,44 @@
 package tech.automationqa.testrail.testrail;
 
-import com.intuit.karate.Logger;
-import org.yaml.snakeyaml.Yaml;
-
-import java.io.IOException;
-import java.util.Map;
 import java.util.Optional;
 
 /**
  * Provides utility methods to retrieve configuration values from a Yaml configuration file.
- * Supports different profiles and default configurations.
+ * Supports different profiles and default configurations. The file is read and validated once, on first use, into
+ * a {@link ConfigSnapshot} that every lookup goes through.
  */
-@SuppressWarnings("ALL")
 public class Configuration {
 
-    private static final Logger logger = new Logger();
-    private static final String DEFAULT_PROFILE = "Default";
-    private static Optional<Map<String, Object>> defaultMap = Optional.empty();
-    private static Optional<Map<String, Object>> profileMap = Optional.empty();
+    private static final String CONFIGURATION_FILE = "/testrail-config.yml";
+    private static volatile ConfigSnapshot snapshot;
 
-    static {
-        Yaml yaml = new Yaml();
-        try {
-            Optional<Map<String, Object>> configMap = Optional.of(yaml.load(Configuration.class.getResource("/testrail-config.yml").openStream()));
-            defaultMap = Optional.of((Map<String, Object>) configMap.get().get(DEFAULT_PROFILE));
-            if (System.getProperty("environment") != null) {
-                String activeProfile = System.getProperty("environment");
-                profileMap = Optional.of((Map<String, Object>) configMap.get().get(activeProfile));
+    /**
+     * Returns the configuration of the active {@code environment} profile, loading it on first use.
+     *
+     * @return The shared snapshot.
+     * @throws IllegalStateException If the configuration contains invalid values.
+     */
+    public static ConfigSnapshot snapshot() {
+        ConfigSnapshot current = snapshot;
+        if (current == null) {
+            synchronized (Configuration.class) {
+                current = snapshot;
+                if (current == null) {
+                    current = ConfigSnapshot.fromClasspath(CONFIGURATION_FILE, System.getProperty("environment"));
+                    snapshot = current;
+                }
             }
-        } catch (IOException e) {
-            logger.info("Configuration file is missing");
         }
+        return current;
     }
 
-
-    private static Optional<Object> fetchConfigurationProperty(String key) {
-        return profileMap
-                .map(map -> map.get(key))
-                .or(() -> defaultMap.map(map -> map.get(key)));
+    /**
+     * @return How long it took to read and parse the configuration file, in nanoseconds.
+     */
+    public static long getLoadTimeNanos() {
+        return snapshot().getLoadTimeNanos();
     }
 
-
     /**
      * Retrieves a configuration property as a String.
      *
@@ -48,7 +46,7 @@ public class Configuration {
      * @return An Optional containing the configuration property value, if found.
      */
     public static Optional<String> getConfigurationString(String key) {
-        return fetchConfigurationProperty(key).map(String::valueOf);
+        return snapshot().getString(key);
     }
 
     /**
@@ -58,7 +56,7 @@ public class Configuration {
      * @return An Optional containing the configuration property value, if found.
      */
     public static Optional<Boolean> getConfigurationBoolean(String key) {
-        return fetchConfigurationProperty(key).map(obj -> Boolean.parseBoolean(obj.toString()));
+        return snapshot().getBoolean(key);
     }
 
     /**
@@ -68,7 +66,7 @@ public class Configuration {
      * @return An Optional containing the configuration property value, if found.
      */
     public static Optional<Integer> getConfigurationInteger(String key) {
-        return fetchConfigurationProperty(key).map(obj ->Integer.valueOf(obj.toString()));
+        return snapshot().getInteger(key);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,28 @@
+package tech.automationqa.testrail.testrail;
+
+/**
+ * The TestRail status and comment summarizing the steps of one executed scenario.
+ */
+public class StepsSummary {
+    private final int statusId;
+    private final String comment;
+
+    public StepsSummary(int statusId, String comment) {
+        this.statusId = statusId;
+        this.comment = comment;
+    }
+
+    /**
+     * @return The TestRail status ID: passed, skipped (reported as blocked) or failed.
+     */
+    public int getStatusId() {
+        return statusId;
+    }
+
+    /**
+     * @return The comment describing the execution, at most {@code results.comment.max.length} characters long.
+     */
+    public String getComment() {
+        return comment;
+    }
+}
@@ -16,8 +16,70 @@ public class TestrailProperty {
     public static final String TEST_PLAN_NAME = "test.plan.create.name";
     public static final String RUN_NAME = "test.run.create.name";
     public static final String RUN_NEW = "test.run.create.new";
+    public static final String RUN_INCLUDE_ALL = "test.run.include.all";
+    public static final String RUN_CASE_BATCH_SIZE = "test.run.case.batch.size";
     public static final String CLOSE_TEST_PLAN = "test.plan.close";
+    public static final String TEST_PLAN_CONFIGURATIONS = "test.plan.configurations";
     public static final String CREATE_FEATURE_FILES = "create.feature.files";
+    public static final String FEATURE_FILES_PATH = "feature.files.path";
+    public static final String FEATURE_FILES_THREADS = "feature.files.threads";
+
+    // Sharded publishing
+    public static final String SHARD_INDEX = "shard.index";
+    public static final String SHARD_COUNT = "shard.count";
+    public static final String SHARD_RUN_KEY = "shard.run.key";
+    public static final String SHARD_LOCK_DIR = "shard.lock.dir";
+
+    // Result upload
+    public static final String RESULTS_BATCH_SIZE = "results.batch.size";
+    public static final String RESULTS_UPLOAD_THREADS = "results.upload.threads";
+    public static final String RESULTS_COMMENT_MAX_LENGTH = "results.comment.max.length";
+    public static final String RESULTS_STREAM = "results.stream";
+    public static final String RESULTS_STREAM_QUEUE_SIZE = "results.stream.queue.size";
+    public static final String RESULTS_STREAM_FLUSH_INTERVAL = "results.stream.flush.interval.ms";
+    public static final String RESULTS_OUTBOX_ENABLED = "results.outbox.enabled";
+    public static final String RESULTS_OUTBOX_PATH = "results.outbox.path";
+    public static final String RESULTS_DELTA = "results.delta";
+    public static final String RESULTS_DELTA_DIR = "results.delta.dir";
+
+    // Attachments
+    public static final String ATTACHMENTS_ENABLED = "attachments.enabled";
+    public static final String ATTACHMENTS_THREADS = "attachments.threads";
+    public static final String ATTACHMENTS_MAX_SIZE = "attachments.max.size.mb";
+    public static final String ATTACHMENTS_DIR = "attachments.dir";
+
+    // Reports
+    public static final String REPORT_ASYNC = "report.async";
+    public static final String REPORT_LEAN_THRESHOLD = "report.lean.threshold.mb";
+    public static final String REPORT_LEAN_TEXT_MAX = "report.lean.text.max.kb";
+    public static final String REPORT_READ_THREADS = "report.read.threads";
+
+    // Suite metadata cache
+    public static final String CACHE_ENABLED = "cache.enabled";
+    public static final String CACHE_DIR = "cache.dir";
+    public static final String CACHE_TTL = "cache.ttl.minutes";
+    public static final String CACHE_FULL_REFRESH = "cache.full.refresh.hours";
+
+    // Execution
+    public static final String KARATE_THREADS = "karate.threads";
+    public static final String EXECUTOR_MODE = "executor.mode";
+
+    // Metrics
+    public static final String METRICS_ENABLED = "metrics.enabled";
+    public static final String METRICS_DIR = "metrics.dir";
+    public static final String METRICS_FORMAT = "metrics.format";
+    public static final String METRICS_LOG_SUMMARY = "metrics.log.summary";
+
+    // HTTP transport
+    public static final String HTTP_TRANSPORT = "http.transport";
+    public static final String HTTP_CONNECT_TIMEOUT = "http.connect.timeout.ms";
+    public static final String HTTP_READ_TIMEOUT = "http.read.timeout.ms";
+    public static final String HTTP_REQUEST_GZIP = "http.request.gzip";
+    public static final String RATE_LIMIT = "http.rate.limit.per.second";
+    public static final String RATE_LIMIT_BURST = "http.rate.limit.burst";
+    public static final String RETRY_MAX = "http.retry.max";
+    public static final String RETRY_BASE_DELAY = "http.retry.base.delay.ms";
+    public static final String RETRY_MAX_DELAY = "http.retry.max.delay.ms";
 
     // Authentication
     public static final String USERNAME = "username";
@@ -1,32 +1,73 @@
 package tech.automationqa.testrail.testrail.apiClient;
 
+import com.intuit.karate.Logger;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import tech.automationqa.testrail.testrail.metrics.MetricsRegistry;
 
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * APIClient handles communication with the TestRail API by sending HTTP requests.
  * This class provides methods to perform GET and POST requests to the specified TestRail instance.
+ * The requests themselves are sent through a pluggable {@link HttpTransport}, and the latency, bytes, retries and
+ * errors of every endpoint are recorded in a {@link MetricsRegistry}.
  */
 public class APIClient {
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(60);
+    private static final int DOWNLOAD_BUFFER_SIZE = 256 * 1024;
+    private static final Logger LOGGER = new Logger();
+
     private String user;
     private String password;
+    private volatile String authorization;
     private final String url;
+    private final HttpTransport transport;
+    private final ClientStats stats = new ClientStats();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private volatile RateLimiter rateLimiter;
+    private volatile RetryPolicy retryPolicy = new RetryPolicy(3, Duration.ofMillis(500), Duration.ofSeconds(30));
+    private volatile boolean requestCompression;
 
     /**
-     * Constructor for APIClient.
+     * Constructor for APIClient using a pooled {@link HttpClientTransport} with the default timeouts.
      *
      * @param url The base URL of the TestRail API.
      */
     public APIClient(String url) {
+        this(url, new HttpClientTransport(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT));
+    }
+
+    /**
+     * Constructor for APIClient.
+     *
+     * @param url       The base URL of the TestRail API.
+     * @param transport The transport used to send the requests.
+     */
+    public APIClient(String url, HttpTransport transport) {
         this.url = url;
+        this.transport = transport;
     }
 
     /**
@@ -37,6 +78,7 @@ public class APIClient {
      */
     public APIClient setUser(String user) {
         this.user = user;
+        this.authorization = null;
         return this;
     }
 
@@ -47,6 +89,7 @@ public class APIClient {
      */
     public void setPassword(String password) {
         this.password = password;
+        this.authorization = null;
     }
 
     /**
@@ -57,89 +100,598 @@ public class APIClient {
      */
     public Object sendGet(String uri) {
         try {
-            return sendRequest("GET", uri, null);
+            return sendRequest("GET", uri, null, true);
+        } catch (APIException e) {
+            throw e;
         } catch (Exception e) {
             throw new APIException("Failed to send GET request due to network issues.", e);
         }
     }
 
     /**
-     * Sends a POST request to the specified URI of the TestRail API.
+     * Sends a POST request to the specified URI of the TestRail API. The request is only sent again when TestRail
+     * did not process it: it was throttled, the server was unavailable, or the connection could not be opened.
+     *
+     * <p>
+     * For a bare {@code get_attachment/} URI the response is saved to the path passed as {@code data}; this form is
+     * deprecated, use {@link #download(String, Path)}, which streams, verifies and resumes the download.
      *
      * @param uri  The API endpoint URI.
      * @param data The JSON string to be sent as the request body.
      * @return An object containing the parsed JSON response.
      */
     public Object sendPost(String uri, String data) {
+        return sendPost(uri, data, false);
+    }
+
+    /**
+     * Sends a POST request whose effect is the same no matter how many times it is applied, so it is also sent
+     * again after server errors and network failures.
+     *
+     * @param uri  The API endpoint URI.
+     * @param data The JSON string to be sent as the request body.
+     * @return An object containing the parsed JSON response.
+     */
+    public Object sendIdempotentPost(String uri, String data) {
+        return sendPost(uri, data, true);
+    }
+
+    private Object sendPost(String uri, String data, boolean idempotent) {
         try {
-            return sendRequest("POST", uri, data);
+            return sendRequest("POST", uri, data, idempotent);
+        } catch (APIException e) {
+            throw e;
         } catch (Exception e) {
             throw new APIException("Failed to send POST request due to network issues.", e);
         }
     }
 
-    private HttpURLConnection createConnection(String method, String uri) throws IOException {
-        URL endpoint;
+    /**
+     * Sends a POST request whose JSON body is serialized while the request is written, instead of being turned
+     * into a string and a byte array first, and gzip-compressed when request compression is on. If TestRail
+     * rejects a compressed body as unreadable but accepts it uncompressed, compression is turned off for the rest
+     * of this client's requests. Like {@link #sendPost(String, String)}, the request is only sent again when
+     * TestRail did not process it.
+     *
+     * @param uri  The API endpoint URI.
+     * @param data The JSON to be sent as the request body.
+     * @return An object containing the parsed JSON response.
+     */
+    public Object sendJson(String uri, JSONObject data) {
+        String endpoint = endpointOf(uri);
+        long start = System.nanoTime();
+        try {
+            JsonBody body = new JsonBody(data, requestCompression);
+            TransportResponse response = exchangeJson(uri, body);
+            if (body.isCompressed() && (response.getStatus() == 400 || response.getStatus() == 415)) {
+                discard(response);
+                response = exchangeJson(uri, body.uncompressed());
+                if (response.getStatus() < 400 && requestCompression) {
+                    requestCompression = false;
+                    LOGGER.warn("TestRail does not accept gzip-compressed requests, sending them uncompressed");
+                }
+            }
+            return handleResponse(response, uri, null);
+        } catch (APIException e) {
+            metrics.increment(MetricsRegistry.ERRORS, endpoint, 1);
+            throw e;
+        } catch (IOException e) {
+            metrics.increment(MetricsRegistry.ERRORS, endpoint, 1);
+            throw new APIException("Failed to send POST request due to network issues.", e);
+        } finally {
+            metrics.record(MetricsRegistry.HTTP_REQUEST, endpoint, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Sends a JSON body, recording the bytes that went on the wire and the time it took to serialize them once
+     * each attempt has written it.
+     */
+    private TransportResponse exchangeJson(String uri, JsonBody body) throws IOException {
+        String endpoint = endpointOf(uri);
+        return exchange(uri, 0, false, () -> {
+            try {
+                return transport.sendJson(this.url + uri, getAuthorization(), body);
+            } finally {
+                metrics.increment(MetricsRegistry.BYTES_SENT, endpoint, body.getLastLength());
+                metrics.record(MetricsRegistry.SERIALIZE, endpoint, body.getLastWriteNanos());
+            }
+        });
+    }
+
+    /**
+     * Sends a GET request and returns the response body as a stream, so large responses can be parsed
+     * incrementally instead of being buffered.
+     *
+     * @param uri The API endpoint URI.
+     * @return The response body; the caller must close it.
+     */
+    public InputStream sendGetStream(String uri) {
+        String endpoint = endpointOf(uri);
+        TransportResponse response;
+        long start = System.nanoTime();
         try {
-            endpoint = new URI(this.url + uri).toURL();
-        } catch (URISyntaxException e) {
-            throw new RuntimeException(e);
+            response = exchange("GET", uri, null, true);
+        } catch (IOException e) {
+            metrics.increment(MetricsRegistry.ERRORS, endpoint, 1);
+            throw new APIException("Failed to send GET request due to network issues.", e);
+        } finally {
+            metrics.record(MetricsRegistry.HTTP_REQUEST, endpoint, System.nanoTime() - start);
+        }
+        if (response.getStatus() == 200 && response.getBody() != null) {
+            return new CountingInputStream(response.getBody(), endpoint);
+        }
+        metrics.increment(MetricsRegistry.ERRORS, endpoint, 1);
+        try {
+            handleResponse(response, uri, null);
+        } catch (IOException e) {
+            throw new APIException("Failed to read GET response.", e);
         }
-        HttpURLConnection conn = (HttpURLConnection) endpoint.openConnection();
-        conn.setRequestMethod(method);
-        conn.addRequestProperty("Authorization", "Basic " + getAuthorization());
-        conn.addRequestProperty("Content-Type", "application/json");
-        return conn;
+        throw new APIException("TestRail API returned HTTP " + response.getStatus(), response.getStatus(), null);
     }
 
-    private Object sendRequest(String method, String uri, String data) throws IOException, APIException {
-        HttpURLConnection conn = createConnection(method, uri);
+    /**
+     * Uploads a file as a {@code multipart/form-data} POST request. The file is streamed from disk while the request
+     * is written, and the request is only sent again when TestRail did not process it.
+     *
+     * @param uri  The API endpoint URI.
+     * @param file The file to upload in the {@code attachment} field.
+     * @return An object containing the parsed JSON response.
+     */
+    public Object sendMultipart(String uri, Path file) {
+        String endpoint = endpointOf(uri);
+        long start = System.nanoTime();
+        try {
+            MultipartBody body = new MultipartBody("attachment", file);
+            TransportResponse response = exchange(uri, body.getContentLength(), false, () -> transport.sendMultipart(this.url + uri, getAuthorization(), body));
+            return handleResponse(response, uri, null);
+        } catch (APIException e) {
+            metrics.increment(MetricsRegistry.ERRORS, endpoint, 1);
+            throw e;
+        } catch (IOException e) {
+            metrics.increment(MetricsRegistry.ERRORS, endpoint, 1);
+            throw new APIException("Failed to upload " + file + " due to network issues.", e);
+        } finally {
+            metrics.record(MetricsRegistry.HTTP_REQUEST, endpoint, System.nanoTime() - start);
+        }
+    }
 
-        if ("POST".equals(method) && data != null) {
-            conn.setDoOutput(true);
-            try (OutputStream outputStream = conn.getOutputStream()) {
-                outputStream.write(data.getBytes(StandardCharsets.UTF_8));
+    /**
+     * Downloads a file to the given path. The body is written through a file channel in large blocks while it is
+     * received, into a {@code .part} file next to the target that is moved into place once it is complete. The
+     * received length is checked against {@code Content-Length}; when the transfer breaks off, the download is
+     * retried from where it stopped with an HTTP range request, and a partial file left by an earlier call is
+     * resumed the same way.
+     *
+     * @param uri    The API endpoint URI.
+     * @param target The file to write; it is replaced if it exists.
+     * @return The size of the downloaded file in bytes.
+     */
+    public long download(String uri, Path target) {
+        String endpoint = endpointOf(uri);
+        Path partial = target.resolveSibling(target.getFileName() + ".part");
+        long start = System.nanoTime();
+        try {
+            for (int attempt = 0; ; attempt++) {
+                long offset = Files.exists(partial) ? Files.size(partial) : 0;
+                TransportResponse response = exchange(uri, 0, true, () -> transport.download(this.url + uri, getAuthorization(), offset));
+                try {
+                    long size = receive(response, uri, partial, offset);
+                    Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    return size;
+                } catch (IOException e) {
+                    if (attempt >= retryPolicy.getMaxRetries()) {
+                        stats.recordGiveUp();
+                        throw e;
+                    }
+                    pause(retryPolicy.delayBefore(attempt + 1, null));
+                    recordRetry(endpoint);
+                }
             }
+        } catch (APIException e) {
+            metrics.increment(MetricsRegistry.ERRORS, endpoint, 1);
+            throw e;
+        } catch (IOException e) {
+            metrics.increment(MetricsRegistry.ERRORS, endpoint, 1);
+            throw new APIException("Failed to download " + target + " due to network issues.", e);
+        } finally {
+            metrics.record(MetricsRegistry.HTTP_REQUEST, endpoint, System.nanoTime() - start);
         }
+    }
+
+    /**
+     * Sends a GET request without blocking the calling thread.
+     *
+     * @param uri The API endpoint URI.
+     * @return A future completed with the parsed JSON response, or exceptionally with an {@link APIException}.
+     */
+    public CompletableFuture<Object> sendGetAsync(String uri) {
+        return sendRequestAsync("GET", uri, null, true);
+    }
+
+    /**
+     * Sends a POST request without blocking the calling thread.
+     *
+     * @param uri  The API endpoint URI.
+     * @param data The JSON string to be sent as the request body.
+     * @return A future completed with the parsed JSON response, or exceptionally with an {@link APIException}.
+     */
+    public CompletableFuture<Object> sendPostAsync(String uri, String data) {
+        return sendRequestAsync("POST", uri, data, false);
+    }
 
-        int status = conn.getResponseCode();
-        try (InputStream istream = (status != 200) ? conn.getErrorStream() : conn.getInputStream()) {
+    /**
+     * Limits the request rate of this client with the given token bucket.
+     *
+     * @param rateLimiter The limiter shared by all requests of this client, or null to send without limit.
+     * @return The current instance of APIClient.
+     */
+    public APIClient setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    /**
+     * Sets how failed requests are retried.
+     *
+     * @param retryPolicy The retry policy.
+     * @return The current instance of APIClient.
+     */
+    public APIClient setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * Turns gzip compression of the JSON bodies sent with {@link #sendJson(String, JSONObject)} on or off.
+     *
+     * @param requestCompression Whether request bodies are compressed.
+     * @return The current instance of APIClient.
+     */
+    public APIClient setRequestCompression(boolean requestCompression) {
+        this.requestCompression = requestCompression;
+        return this;
+    }
+
+    /**
+     * @return The throttle, retry and give-up counters of this client.
+     */
+    public ClientStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return The registry holding the per-endpoint latency, bytes, retries and errors of this client. Callers may
+     * record their own timings in it so a whole publishing run ends up in one place.
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Extracts the endpoint name from a request URI, e.g. {@code get_cases} from
+     * {@code index.php?/api/v2/get_cases/1&suite_id=2}, so requests to different IDs share one metric.
+     *
+     * @param uri The request URI.
+     * @return The endpoint name.
+     */
+    static String endpointOf(String uri) {
+        int start = uri.indexOf("api/v2/");
+        start = start < 0 ? 0 : start + "api/v2/".length();
+        int end = start;
+        while (end < uri.length() && uri.charAt(end) != '/' && uri.charAt(end) != '&' && uri.charAt(end) != '?') {
+            end++;
+        }
+        return uri.substring(start, end);
+    }
+
+    private Object sendRequest(String method, String uri, String data, boolean idempotent) throws IOException, APIException {
+        String endpoint = endpointOf(uri);
+        long start = System.nanoTime();
+        try {
+            TransportResponse response = exchange(method, uri, encodeBody(method, data), idempotent);
+            return handleResponse(response, uri, data);
+        } catch (IOException | APIException e) {
+            metrics.increment(MetricsRegistry.ERRORS, endpoint, 1);
+            throw e;
+        } finally {
+            metrics.record(MetricsRegistry.HTTP_REQUEST, endpoint, System.nanoTime() - start);
+        }
+    }
+
+    private CompletableFuture<Object> sendRequestAsync(String method, String uri, String data, boolean idempotent) {
+        String endpoint = endpointOf(uri);
+        long start = System.nanoTime();
+        return exchangeAsync(method, uri, encodeBody(method, data), idempotent, 0)
+                .thenApply(response -> {
+                    try {
+                        return handleResponse(response, uri, data);
+                    } catch (IOException e) {
+                        throw new APIException("Failed to read " + method + " response.", e);
+                    }
+                })
+                .whenComplete((result, error) -> {
+                    metrics.record(MetricsRegistry.HTTP_REQUEST, endpoint, System.nanoTime() - start);
+                    if (error != null) {
+                        metrics.increment(MetricsRegistry.ERRORS, endpoint, 1);
+                    }
+                });
+    }
+
+    /**
+     * Sends a request through the rate limiter, retrying it while the policy allows. Throttled requests and
+     * requests rejected as unavailable are always retried, since TestRail did not process them; other server
+     * errors and network failures are only retried for idempotent requests.
+     *
+     * @return The final response, which may still be an error once the retries are exhausted.
+     */
+    private TransportResponse exchange(String method, String uri, byte[] body, boolean idempotent) throws IOException {
+        return exchange(uri, body == null ? 0 : body.length, idempotent, () -> transport.send(method, this.url + uri, getAuthorization(), body));
+    }
+
+    private TransportResponse exchange(String uri, long bodyLength, boolean idempotent, Call call) throws IOException {
+        String endpoint = endpointOf(uri);
+        for (int attempt = 0; ; attempt++) {
+            acquirePermit();
+            if (bodyLength > 0) {
+                metrics.increment(MetricsRegistry.BYTES_SENT, endpoint, bodyLength);
+            }
+            TransportResponse response;
+            try {
+                response = call.send();
+            } catch (IOException e) {
+                if (attempt < retryPolicy.getMaxRetries() && (idempotent || e instanceof ConnectException)) {
+                    pause(retryPolicy.delayBefore(attempt + 1, null));
+                    recordRetry(endpoint);
+                    continue;
+                }
+                stats.recordGiveUp();
+                throw e;
+            }
+            if (!shouldRetry(response, idempotent, endpoint)) {
+                return response;
+            }
+            if (attempt >= retryPolicy.getMaxRetries()) {
+                stats.recordGiveUp();
+                return response;
+            }
+            discard(response);
+            pause(retryPolicy.delayBefore(attempt + 1, parseRetryAfter(response)));
+            recordRetry(endpoint);
+        }
+    }
+
+    private CompletableFuture<TransportResponse> exchangeAsync(String method, String uri, byte[] body, boolean idempotent, int attempt) {
+        String endpoint = endpointOf(uri);
+        if (body != null) {
+            metrics.increment(MetricsRegistry.BYTES_SENT, endpoint, body.length);
+        }
+        long waitNanos = rateLimiter == null ? 0 : rateLimiter.reserve();
+        Executor permit = CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS);
+        return CompletableFuture.supplyAsync(() -> null, permit)
+                .thenCompose(ignored -> transport.sendAsync(method, this.url + uri, getAuthorization(), body))
+                .handle((response, error) -> {
+                    boolean retryable = error != null
+                            ? idempotent || error.getCause() instanceof ConnectException
+                            : shouldRetry(response, idempotent, endpoint);
+                    if (retryable && attempt >= retryPolicy.getMaxRetries()) {
+                        stats.recordGiveUp();
+                    }
+                    if (!retryable || attempt >= retryPolicy.getMaxRetries()) {
+                        return error != null ? CompletableFuture.<TransportResponse>failedFuture(error) : CompletableFuture.completedFuture(response);
+                    }
+                    recordRetry(endpoint);
+                    Duration delay = retryPolicy.delayBefore(attempt + 1, error == null ? parseRetryAfter(response) : null);
+                    Executor delayed = CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS);
+                    return CompletableFuture.supplyAsync(() -> null, delayed)
+                            .thenCompose(ignored -> exchangeAsync(method, uri, body, idempotent, attempt + 1));
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private void recordRetry(String endpoint) {
+        stats.recordRetry();
+        metrics.increment(MetricsRegistry.RETRIES, endpoint, 1);
+    }
+
+    private boolean shouldRetry(TransportResponse response, boolean idempotent, String endpoint) {
+        int status = response.getStatus();
+        if (status == 429) {
+            stats.recordThrottle();
+            metrics.increment(MetricsRegistry.THROTTLES, endpoint, 1);
+            if (rateLimiter != null) {
+                rateLimiter.onThrottled();
+            }
+            return true;
+        }
+        if (status < 400 && rateLimiter != null) {
+            rateLimiter.onSuccess();
+        }
+        if (status == 503 && response.getHeader("Retry-After").isPresent()) {
+            return true;
+        }
+        return status >= 500 && idempotent;
+    }
+
+    private void acquirePermit() throws IOException {
+        if (rateLimiter != null) {
+            try {
+                rateLimiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the rate limiter");
+            }
+        }
+    }
+
+    private void pause(Duration delay) throws IOException {
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    private void discard(TransportResponse response) {
+        try (InputStream istream = response.getBody()) {
+            if (istream != null) {
+                istream.readAllBytes();
+            }
+        } catch (IOException ignored) {
+            // The response is being thrown away, a failure to drain it only costs the pooled connection.
+        }
+    }
+
+    private static Duration parseRetryAfter(TransportResponse response) {
+        Optional<String> header = response.getHeader("Retry-After");
+        if (header.isEmpty()) {
+            return null;
+        }
+        String value = header.get().trim();
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            try {
+                Duration delay = Duration.between(Instant.now(), ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+                return delay.isNegative() ? Duration.ZERO : delay;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    private byte[] encodeBody(String method, String data) {
+        return "POST".equals(method) && data != null ? data.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private Object handleResponse(TransportResponse response, String uri, String data) throws IOException, APIException {
+        int status = response.getStatus();
+        try (InputStream istream = response.getBody()) {
             if (istream == null) {
-                throw new APIException("TestRail API returned HTTP " + status + " without a response body.");
+                throw new APIException("TestRail API returned HTTP " + status + " without a response body.", status, parseRetryAfter(response));
             }
 
             if (uri.startsWith("get_attachment/") && status == 200) {
                 return saveAttachment(istream, data);
             }
 
-            String responseBody = readStream(istream);
-            return parseResponse(status, responseBody);
+            String responseBody = readStream(istream, uri);
+            return parseResponse(response, responseBody);
         }
     }
 
-    private String saveAttachment(InputStream istream, String filePath) throws IOException {
-        try (FileOutputStream outputStream = new FileOutputStream(filePath)) {
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = istream.read(buffer)) > 0) {
-                outputStream.write(buffer, 0, bytesRead);
+    /**
+     * Writes the body of a download response to the partial file, appending to it when the server honoured the
+     * range request and starting over when it sent the whole file.
+     *
+     * @return The size of the complete file.
+     * @throws IOException If the transfer broke off or the body is shorter than announced; the partial file is kept
+     *                     so the download can be resumed.
+     */
+    private long receive(TransportResponse response, String uri, Path partial, long offset) throws IOException, APIException {
+        int status = response.getStatus();
+        if (status == 416 && offset > 0) {
+            discard(response);
+            // The partial file is either already complete or does not belong to this attachment
+            if (offset == contentRangeTotal(response)) {
+                return offset;
             }
+            Files.delete(partial);
+            throw new IOException("The partial download of " + uri + " does not match the attachment, starting over");
         }
-        return filePath;
+        if ((status != 200 && status != 206) || response.getBody() == null) {
+            handleResponse(response, uri, null);
+            throw new APIException("TestRail API returned HTTP " + status, status, null);
+        }
+        long position;
+        long length;
+        try {
+            position = status == 206 ? contentRangeStart(response) : 0;
+            Optional<String> contentLength = response.getHeader("Content-Length");
+            length = contentLength.isPresent() ? parseHeaderLong("Content-Length", contentLength.get()) : -1;
+        } catch (IOException e) {
+            discard(response);
+            throw e;
+        }
+        if (position != offset && position != 0) {
+            discard(response);
+            throw new IOException("Requested " + uri + " from byte " + offset + " but received it from byte " + position);
+        }
+        long received = 0;
+        try (InputStream istream = response.getBody();
+             FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(position);
+            channel.position(position);
+            ByteBuffer buffer = ByteBuffer.allocate(DOWNLOAD_BUFFER_SIZE);
+            int read;
+            while ((read = istream.read(buffer.array())) >= 0) {
+                buffer.clear().limit(read);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                received += read;
+            }
+        } finally {
+            metrics.increment(MetricsRegistry.BYTES_RECEIVED, endpointOf(uri), received);
+        }
+        if (length >= 0 && received != length) {
+            throw new IOException("Received " + received + " of " + length + " bytes of " + uri);
+        }
+        return position + received;
     }
 
-    private String readStream(InputStream istream) throws IOException {
-        StringBuilder textBuilder = new StringBuilder();
-        try (Reader reader = new BufferedReader(new InputStreamReader(istream, StandardCharsets.UTF_8))) {
-            int c;
-            while ((c = reader.read()) != -1) {
-                textBuilder.append((char) c);
-            }
+    /**
+     * @return The first byte of a {@code Content-Range: bytes <first>-<last>/<total>} header, or 0 if it is missing.
+     * @throws IOException If the first byte is not a number.
+     */
+    private static long contentRangeStart(TransportResponse response) throws IOException {
+        String range = response.getHeader("Content-Range").orElse("");
+        int dash = range.indexOf('-');
+        if (!range.startsWith("bytes ") || dash < 0) {
+            return 0;
         }
-        return textBuilder.toString();
+        return parseHeaderLong("Content-Range", range.substring("bytes ".length(), dash));
     }
 
-    private Object parseResponse(int status, String responseBody) throws APIException {
+    /**
+     * @return The total of a {@code Content-Range: bytes *}{@code /<total>} header, or -1 if it is missing.
+     * @throws IOException If the total is not a number.
+     */
+    private static long contentRangeTotal(TransportResponse response) throws IOException {
+        String range = response.getHeader("Content-Range").orElse("");
+        int slash = range.indexOf('/');
+        if (slash < 0 || range.endsWith("*")) {
+            return -1;
+        }
+        return parseHeaderLong("Content-Range", range.substring(slash + 1));
+    }
+
+    /**
+     * Parses a number sent in a header. A malformed value is treated like a broken response, so the download is
+     * tried again instead of failing with an unchecked exception.
+     */
+    private static long parseHeaderLong(String header, String value) throws IOException {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed " + header + " header: " + value);
+        }
+    }
+
+    private String saveAttachment(InputStream istream, String filePath) throws IOException {
+        Files.copy(istream, Paths.get(filePath), StandardCopyOption.REPLACE_EXISTING);
+        return filePath;
+    }
+
+    private String readStream(InputStream istream, String uri) throws IOException {
+        byte[] bytes = istream.readAllBytes();
+        metrics.increment(MetricsRegistry.BYTES_RECEIVED, endpointOf(uri), bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Object parseResponse(TransportResponse response, String responseBody) throws APIException {
+        int status = response.getStatus();
         if (responseBody.isEmpty()) {
             return new JSONObject();
         }
@@ -147,7 +699,7 @@ public class APIClient {
         Object result = responseBody.startsWith("[") ? new JSONArray(responseBody) : new JSONObject(responseBody);
         if (status != 200) {
             String error = extractErrorMessage(result);
-            throw new APIException("TestRail API returned HTTP " + status + " (" + error + ")");
+            throw new APIException("TestRail API returned HTTP " + status + " (" + error + ")", status, parseRetryAfter(response));
         }
 
         return result;
@@ -164,6 +716,61 @@ public class APIClient {
     }
 
     private String getAuthorization() {
-        return Base64.getEncoder().encodeToString((this.user + ":" + this.password).getBytes(StandardCharsets.UTF_8));
+        String header = authorization;
+        if (header == null) {
+            header = "Basic " + Base64.getEncoder().encodeToString((this.user + ":" + this.password).getBytes(StandardCharsets.UTF_8));
+            authorization = header;
+        }
+        return header;
+    }
+
+    /**
+     * Sends one attempt of a request; {@link #exchange} calls it again for every retry.
+     */
+    @FunctionalInterface
+    private interface Call {
+        TransportResponse send() throws IOException;
+    }
+
+    /**
+     * Counts the bytes of a streamed response as they are read and adds them to the endpoint's received bytes
+     * once the stream is closed.
+     */
+    private class CountingInputStream extends FilterInputStream {
+        private final String endpoint;
+        private long bytes;
+
+        CountingInputStream(InputStream in, String endpoint) {
+            super(in);
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                bytes += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                metrics.increment(MetricsRegistry.BYTES_RECEIVED, endpoint, bytes);
+                bytes = 0;
+            }
+        }
     }
 }
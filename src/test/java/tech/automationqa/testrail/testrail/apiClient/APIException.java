@@ -1,10 +1,17 @@
 package tech.automationqa.testrail.testrail.apiClient;
 
+import java.time.Duration;
+import java.util.Optional;
+
 /**
  * APIException is a custom exception class that represents errors occurring during API requests.
  * It extends the standard Exception class with additional functionality for handling API-related errors.
  */
 public class APIException extends RuntimeException {
+    public static final int NO_STATUS = -1;
+
+    private final int statusCode;
+    private final Duration retryAfter;
 
     /**
      * Constructor for APIException.
@@ -12,9 +19,47 @@ public class APIException extends RuntimeException {
      * @param message A string message providing details about the API exception that occurred.
      */
     public APIException(String message) {
-        super(message);
+        this(message, NO_STATUS, null);
     }
+
     public APIException(String message, Throwable cause) {
         super(message, cause);
+        this.statusCode = NO_STATUS;
+        this.retryAfter = null;
+    }
+
+    /**
+     * Constructor for APIException raised for an HTTP error response.
+     *
+     * @param message    A string message providing details about the API exception that occurred.
+     * @param statusCode The HTTP status returned by TestRail.
+     * @param retryAfter The delay requested by the server through {@code Retry-After}, or null if none was sent.
+     */
+    public APIException(String message, int statusCode, Duration retryAfter) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return The HTTP status returned by TestRail, or {@link #NO_STATUS} if no response was received.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return The delay requested by the server through {@code Retry-After}, if any.
+     */
+    public Optional<Duration> getRetryAfter() {
+        return Optional.ofNullable(retryAfter);
+    }
+
+    /**
+     * @return true if the request may succeed when sent again: no response was received, the request was throttled
+     * or the server failed.
+     */
+    public boolean isRetryable() {
+        return statusCode == NO_STATUS || statusCode == 429 || statusCode >= 500;
     }
-}
\ No newline at end of file
+}
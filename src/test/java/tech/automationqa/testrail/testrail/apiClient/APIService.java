@@ -1,8 +1,16 @@
 package tech.automationqa.testrail.testrail.apiClient;
 
-
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import tech.automationqa.testrail.testrail.model.Run;
+import tech.automationqa.testrail.testrail.model.RunTest;
+import tech.automationqa.testrail.testrail.model.Section;
+import tech.automationqa.testrail.testrail.model.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Path;
 
 /**
  * This class provides services to interact with the API for managing test cases, plans, results, and runs.
@@ -10,13 +18,24 @@ import org.json.JSONObject;
 public class APIService {
 
     private static final String GET_CASES = "index.php?/api/v2/get_cases/%d&suite_id=%d";
+    private static final String GET_CASES_UPDATED_AFTER = "index.php?/api/v2/get_cases/%d&suite_id=%d&updated_after=%d";
     private static final String ADD_PLAN_ENDPOINT = "index.php?/api/v2/add_plan/%d";
+    private static final String GET_PLAN_ENDPOINT = "index.php?/api/v2/get_plan/%d";
     private static final String CLOSE_PLAN_ENDPOINT = "index.php?/api/v2/close_plan/%d";
     private static final String ADD_RESULTS_FOR_CASES = "index.php?/api/v2/add_results_for_cases/%d";
     private static final String ADD_RUN_ENDPOINT = "index.php?/api/v2/add_run/%d";
     private static final String GET_RUN_ENDPOINT = "index.php?/api/v2/get_run/%d";
+    private static final String GET_RUNS = "index.php?/api/v2/get_runs/%d&suite_id=%d&is_completed=0";
+    private static final String DELETE_RUN_ENDPOINT = "index.php?/api/v2/delete_run/%d";
+    private static final String UPDATE_RUN_ENDPOINT = "index.php?/api/v2/update_run/%d";
+    private static final String UPDATE_RUN_IN_PLAN_ENTRY_ENDPOINT = "index.php?/api/v2/update_run_in_plan_entry/%d";
+    private static final String UPDATE_PLAN_ENTRY_ENDPOINT = "index.php?/api/v2/update_plan_entry/%d/%s";
     private static final String ADD_ENTRY_PLAN_ENDPOINT = "index.php?/api/v2/add_plan_entry/%d";
+    private static final String DELETE_PLAN_ENTRY_ENDPOINT = "index.php?/api/v2/delete_plan_entry/%d/%s";
     private static final String GET_SECTIONS = "index.php?/api/v2/get_sections/%d&suite_id=%d";
+    private static final String GET_TESTS = "index.php?/api/v2/get_tests/%d";
+    private static final String ADD_ATTACHMENT_TO_RESULT = "index.php?/api/v2/add_attachment_to_result/%d";
+    private static final String GET_ATTACHMENT = "index.php?/api/v2/get_attachment/%s";
 
     private final APIClient client; // The API client used to communicate with the API server.
 
@@ -29,6 +48,13 @@ public class APIService {
         this.client = client;
     }
 
+    /**
+     * @return the throttle, retry and give-up counters of the underlying client.
+     */
+    public ClientStats getClientStats() {
+        return client.getStats();
+    }
+
     /**
      * Retrieves all test cases for a specified project and test suite.
      *
@@ -41,6 +67,45 @@ public class APIService {
         return (JSONArray) client.sendGet(requestUrl);
     }
 
+    /**
+     * Lazily iterates over all test cases of a project and test suite, following TestRail's pagination and
+     * parsing each page as it is streamed.
+     *
+     * @param projectId the ID of the project.
+     * @param suiteId   the ID of the test suite.
+     * @return an Iterable yielding the test cases page by page.
+     */
+    public PagedResults<TestCase> streamCases(int projectId, int suiteId) {
+        String requestUrl = String.format(GET_CASES, projectId, suiteId);
+        return new PagedResults<>(client, requestUrl, "cases", TestCase::read);
+    }
+
+    /**
+     * Lazily iterates over the IDs of all test cases of a project and test suite. Every other field of the cases is
+     * skipped while parsing.
+     *
+     * @param projectId the ID of the project.
+     * @param suiteId   the ID of the test suite.
+     * @return an Iterable yielding the case IDs page by page.
+     */
+    public PagedResults<Integer> streamCaseIds(int projectId, int suiteId) {
+        String requestUrl = String.format(GET_CASES, projectId, suiteId);
+        return new PagedResults<>(client, requestUrl, "cases", APIService::readId);
+    }
+
+    /**
+     * Lazily iterates over the test cases of a project and test suite that were updated after the given time.
+     *
+     * @param projectId    the ID of the project.
+     * @param suiteId      the ID of the test suite.
+     * @param updatedAfter the UNIX timestamp, in seconds, after which the cases must have been updated.
+     * @return an Iterable yielding the updated test cases page by page.
+     */
+    public PagedResults<TestCase> streamCasesUpdatedAfter(int projectId, int suiteId, long updatedAfter) {
+        String requestUrl = String.format(GET_CASES_UPDATED_AFTER, projectId, suiteId, updatedAfter);
+        return new PagedResults<>(client, requestUrl, "cases", TestCase::read);
+    }
+
     /**
      * Creates a new test plan within a project.
      *
@@ -53,6 +118,17 @@ public class APIService {
         return (JSONObject) client.sendPost(url, data.toString());
     }
 
+    /**
+     * Retrieves a test plan, including its entries and their runs.
+     *
+     * @param planId the ID of the test plan to retrieve.
+     * @return a JSONObject representing the test plan.
+     */
+    public JSONObject getPlan(int planId) {
+        String url = String.format(GET_PLAN_ENDPOINT, planId);
+        return (JSONObject) client.sendGet(url);
+    }
+
     /**
      * Closes an existing test plan.
      *
@@ -68,10 +144,36 @@ public class APIService {
      *
      * @param runId the ID of the test run.
      * @param data  a JSONObject containing test results to add.
+     * @return a JSONArray of the created results, in the order they were sent.
      */
-    public void addResultsForCases(int runId, JSONObject data) {
+    public JSONArray addResultsForCases(int runId, JSONObject data) {
         String endpoint = String.format(ADD_RESULTS_FOR_CASES, runId);
-        client.sendPost(endpoint, data.toString());
+        Object created = client.sendJson(endpoint, data);
+        return created instanceof JSONArray ? (JSONArray) created : new JSONArray();
+    }
+
+    /**
+     * Attaches a file to a test result. The file is streamed from disk.
+     *
+     * @param resultId the ID of the test result.
+     * @param file     the file to attach.
+     * @return a JSONObject holding the {@code attachment_id} of the new attachment.
+     */
+    public JSONObject addAttachmentToResult(int resultId, Path file) {
+        String endpoint = String.format(ADD_ATTACHMENT_TO_RESULT, resultId);
+        return (JSONObject) client.sendMultipart(endpoint, file);
+    }
+
+    /**
+     * Downloads an attachment to a file. The file is streamed to disk and an interrupted download is resumed.
+     *
+     * @param attachmentId the ID of the attachment.
+     * @param target       the file to write.
+     * @return the size of the downloaded file in bytes.
+     */
+    public long getAttachment(String attachmentId, Path target) {
+        String endpoint = String.format(GET_ATTACHMENT, attachmentId);
+        return client.download(endpoint, target);
     }
 
     /**
@@ -109,6 +211,78 @@ public class APIService {
         return (JSONObject) client.sendGet(endpoint);
     }
 
+    /**
+     * Lazily iterates over the open test runs of a suite that are not part of a test plan, following TestRail's
+     * pagination and parsing each page as it is streamed.
+     *
+     * @param projectId the ID of the project.
+     * @param suiteId   the ID of the test suite.
+     * @return an Iterable yielding the runs page by page.
+     */
+    public PagedResults<Run> streamRuns(int projectId, int suiteId) {
+        String requestUrl = String.format(GET_RUNS, projectId, suiteId);
+        return new PagedResults<>(client, requestUrl, "runs", Run::read);
+    }
+
+    /**
+     * Deletes a test run that is not part of a test plan, together with its tests and results.
+     *
+     * @param runId the ID of the test run to delete.
+     */
+    public void deleteRun(int runId) {
+        String endpoint = String.format(DELETE_RUN_ENDPOINT, runId);
+        client.sendPost(endpoint, null);
+    }
+
+    /**
+     * Deletes an entry of a test plan, together with its runs, tests and results.
+     *
+     * @param planId  the ID of the test plan.
+     * @param entryId the ID of the plan entry to delete.
+     */
+    public void deletePlanEntry(int planId, String entryId) {
+        String endpoint = String.format(DELETE_PLAN_ENTRY_ENDPOINT, planId, entryId);
+        client.sendPost(endpoint, null);
+    }
+
+    /**
+     * Updates a test run that is not part of a test plan. Only idempotent updates, such as setting the complete
+     * {@code case_ids} of the run, may be sent this way, since the request is sent again after network failures.
+     *
+     * @param runId the ID of the test run.
+     * @param data  a JSONObject containing the fields to update.
+     * @return a JSONObject representing the updated test run.
+     */
+    public JSONObject updateRun(int runId, JSONObject data) {
+        String endpoint = String.format(UPDATE_RUN_ENDPOINT, runId);
+        return (JSONObject) client.sendIdempotentPost(endpoint, data.toString());
+    }
+
+    /**
+     * Updates a test run of a plan entry that uses configurations. Only idempotent updates may be sent this way.
+     *
+     * @param runId the ID of the test run.
+     * @param data  a JSONObject containing the fields to update.
+     * @return a JSONObject representing the updated test run.
+     */
+    public JSONObject updateRunInPlanEntry(int runId, JSONObject data) {
+        String endpoint = String.format(UPDATE_RUN_IN_PLAN_ENTRY_ENDPOINT, runId);
+        return (JSONObject) client.sendIdempotentPost(endpoint, data.toString());
+    }
+
+    /**
+     * Updates a plan entry and the runs it holds. Only idempotent updates may be sent this way.
+     *
+     * @param planId  the ID of the test plan.
+     * @param entryId the ID of the plan entry.
+     * @param data    a JSONObject containing the fields to update.
+     * @return a JSONObject representing the updated plan entry.
+     */
+    public JSONObject updatePlanEntry(int planId, String entryId, JSONObject data) {
+        String endpoint = String.format(UPDATE_PLAN_ENTRY_ENDPOINT, planId, entryId);
+        return (JSONObject) client.sendIdempotentPost(endpoint, data.toString());
+    }
+
     /**
      * Retrieves all sections for a specified project and test suite.
      *
@@ -120,4 +294,43 @@ public class APIService {
         String requestUrl = String.format(GET_SECTIONS, projectId, suiteId);
         return (JSONArray) client.sendGet(requestUrl);
     }
+
+    /**
+     * Lazily iterates over all sections of a project and test suite, following TestRail's pagination and
+     * parsing each page as it is streamed.
+     *
+     * @param projectId the ID of the project.
+     * @param suiteId   the ID of the test suite.
+     * @return an Iterable yielding the sections page by page.
+     */
+    public PagedResults<Section> streamSections(int projectId, int suiteId) {
+        String requestUrl = String.format(GET_SECTIONS, projectId, suiteId);
+        return new PagedResults<>(client, requestUrl, "sections", Section::read);
+    }
+
+    /**
+     * Lazily iterates over the tests of a run with their current status, following TestRail's pagination and
+     * parsing each page as it is streamed.
+     *
+     * @param runId the ID of the test run.
+     * @return an Iterable yielding the tests page by page.
+     */
+    public PagedResults<RunTest> streamTests(int runId) {
+        String requestUrl = String.format(GET_TESTS, runId);
+        return new PagedResults<>(client, requestUrl, "tests", RunTest::read);
+    }
+
+    private static Integer readId(JsonParser parser) throws IOException {
+        int id = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("id".equals(field)) {
+                id = parser.getIntValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return id;
+    }
 }
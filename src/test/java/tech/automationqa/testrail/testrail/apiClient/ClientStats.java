@@ -0,0 +1,42 @@
+package tech.automationqa.testrail.testrail.apiClient;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ClientStats counts how often an {@link APIClient} was throttled by TestRail, how many requests it sent again
+ * and how many requests it gave up on after exhausting its retries.
+ */
+public class ClientStats {
+    private final AtomicLong throttles = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong giveUps = new AtomicLong();
+
+    void recordThrottle() {
+        throttles.incrementAndGet();
+    }
+
+    void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    void recordGiveUp() {
+        giveUps.incrementAndGet();
+    }
+
+    public long getThrottles() {
+        return throttles.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getGiveUps() {
+        return giveUps.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d throttled, %d retried, %d gave up", getThrottles(), getRetries(), getGiveUps());
+    }
+}
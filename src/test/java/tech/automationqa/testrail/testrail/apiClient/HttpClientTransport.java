@@ -0,0 +1,129 @@
+package tech.automationqa.testrail.testrail.apiClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * HttpClientTransport is the default {@link HttpTransport}. It is backed by a single {@link HttpClient}, so
+ * connections are kept alive and reused across requests (multiplexed over HTTP/2 when the server supports it)
+ * instead of paying a new TLS handshake for every call. Connect and request timeouts keep a stalled server from
+ * hanging the caller.
+ */
+public class HttpClientTransport implements HttpTransport {
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+
+    /**
+     * Constructor for HttpClientTransport.
+     *
+     * @param connectTimeout The maximum time to wait for a connection to be established.
+     * @param requestTimeout The maximum time to wait for a response once the request has been sent.
+     */
+    public HttpClientTransport(Duration connectTimeout, Duration requestTimeout) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.requestTimeout = requestTimeout;
+    }
+
+    @Override
+    public TransportResponse send(String method, String url, String authorization, byte[] body) throws IOException {
+        try {
+            HttpResponse<InputStream> response = httpClient.send(buildRequest(method, url, authorization, body), HttpResponse.BodyHandlers.ofInputStream());
+            return new TransportResponse(response.statusCode(), response.headers().map(), response.body());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + method + " " + url, e);
+        }
+    }
+
+    @Override
+    public TransportResponse sendJson(String url, String authorization, JsonBody body) throws IOException {
+        // The client pulls the body from a publisher on its own threads, so it is encoded up front; compressed,
+        // only a fraction of the JSON is buffered
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("Authorization", authorization)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()));
+        body.getContentEncoding().ifPresent(encoding -> request.header("Content-Encoding", encoding));
+        try {
+            HttpResponse<InputStream> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            return new TransportResponse(response.statusCode(), response.headers().map(), response.body());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for POST " + url, e);
+        }
+    }
+
+    @Override
+    public TransportResponse sendMultipart(String url, String authorization, MultipartBody body) throws IOException {
+        // The file is pulled in small chunks as the request is written; the fixed length avoids chunked encoding
+        HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofInputStream(() -> {
+            try {
+                return body.open();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }), body.getContentLength());
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("Authorization", authorization)
+                .header("Content-Type", body.getContentType())
+                .POST(publisher)
+                .build();
+        try {
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            return new TransportResponse(response.statusCode(), response.headers().map(), response.body());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while uploading " + body.getFile() + " to " + url, e);
+        }
+    }
+
+    @Override
+    public TransportResponse download(String url, String authorization, long rangeStart) throws IOException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("Authorization", authorization)
+                .GET();
+        if (rangeStart > 0) {
+            request.header("Range", "bytes=" + rangeStart + "-");
+        }
+        try {
+            HttpResponse<InputStream> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            return new TransportResponse(response.statusCode(), response.headers().map(), response.body());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading " + url, e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> sendAsync(String method, String url, String authorization, byte[] body) {
+        return httpClient.sendAsync(buildRequest(method, url, authorization, body), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> new TransportResponse(response.statusCode(), response.headers().map(), new ByteArrayInputStream(response.body())));
+    }
+
+    private HttpRequest buildRequest(String method, String url, String authorization, byte[] body) {
+        HttpRequest.BodyPublisher publisher = body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body);
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("Authorization", authorization)
+                .header("Content-Type", "application/json")
+                .method(method, publisher)
+                .build();
+    }
+}
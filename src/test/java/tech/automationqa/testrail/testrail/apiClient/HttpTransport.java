@@ -0,0 +1,89 @@
+package tech.automationqa.testrail.testrail.apiClient;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * HttpTransport sends the raw HTTP requests issued by {@link APIClient}. Implementations own connection
+ * management, so the client can switch between connection strategies without changing how requests are built
+ * or how responses are parsed.
+ */
+public interface HttpTransport {
+
+    /**
+     * Sends a request and blocks until the response headers have been received.
+     *
+     * @param method        The HTTP method, GET or POST.
+     * @param url           The absolute URL of the request.
+     * @param authorization The value of the Authorization header.
+     * @param body          The request body, or null if the request has none.
+     * @return The response; its body stream must be closed by the caller.
+     * @throws IOException If the request could not be sent or the response could not be read.
+     */
+    TransportResponse send(String method, String url, String authorization, byte[] body) throws IOException;
+
+    /**
+     * Sends a JSON POST request whose body is serialized as it is sent, and blocks until the response headers have
+     * been received. Transports that do not override this send the body uncompressed from a buffer.
+     *
+     * @param url           The absolute URL of the request.
+     * @param authorization The value of the Authorization header.
+     * @param body          The JSON body; it may be written once per call.
+     * @return The response; its body stream must be closed by the caller.
+     * @throws IOException If the request could not be sent or the response could not be read.
+     */
+    default TransportResponse sendJson(String url, String authorization, JsonBody body) throws IOException {
+        return send("POST", url, authorization, body.uncompressed().toByteArray());
+    }
+
+    /**
+     * Sends a {@code multipart/form-data} POST request whose body is streamed from disk, and blocks until the
+     * response headers have been received.
+     *
+     * @param url           The absolute URL of the request.
+     * @param authorization The value of the Authorization header.
+     * @param body          The multipart body; its file is read while the request is sent.
+     * @return The response; its body stream must be closed by the caller.
+     * @throws IOException If the request could not be sent or the response could not be read, or the transport
+     *                     cannot upload files.
+     */
+    default TransportResponse sendMultipart(String url, String authorization, MultipartBody body) throws IOException {
+        throw new IOException(getClass().getSimpleName() + " does not support file uploads");
+    }
+
+    /**
+     * Sends a GET request for a file and blocks until the response headers have been received. When
+     * {@code rangeStart} is positive only the bytes from that offset on are requested, so an interrupted download
+     * can be resumed; a server that does not support ranges answers with the whole file and a 200 status.
+     *
+     * @param url           The absolute URL of the request.
+     * @param authorization The value of the Authorization header.
+     * @param rangeStart    The offset of the first byte to receive, or 0 for the whole file.
+     * @return The response; its body stream must be closed by the caller.
+     * @throws IOException If the request could not be sent or the response could not be read.
+     */
+    default TransportResponse download(String url, String authorization, long rangeStart) throws IOException {
+        // Without range support the whole file is sent again, which the client detects from the 200 status
+        return send("GET", url, authorization, null);
+    }
+
+    /**
+     * Sends a request without blocking the calling thread. The returned response is fully buffered, so reading
+     * its body never blocks.
+     *
+     * @param method        The HTTP method, GET or POST.
+     * @param url           The absolute URL of the request.
+     * @param authorization The value of the Authorization header.
+     * @param body          The request body, or null if the request has none.
+     * @return A future completed with the response.
+     */
+    default CompletableFuture<TransportResponse> sendAsync(String method, String url, String authorization, byte[] body) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(method, url, authorization, body).buffered();
+            } catch (IOException e) {
+                throw new APIException("Failed to send " + method + " request due to network issues.", e);
+            }
+        });
+    }
+}
@@ -0,0 +1,172 @@
+package tech.automationqa.testrail.testrail.apiClient;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * JsonBody is a JSON request body that is serialized while the request is written. The {@code org.json} tree is
+ * walked with a Jackson {@link JsonGenerator} straight into the output, optionally through gzip, so the body never
+ * exists as a {@code String} and a {@code byte[]} copy of it next to the tree. It can be written any number of
+ * times, once per attempt.
+ */
+public class JsonBody {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final JSONObject json;
+    private final boolean compressed;
+    private volatile long lastLength;
+    private volatile long lastWriteNanos;
+
+    /**
+     * Constructor for JsonBody.
+     *
+     * @param json       The JSON to send.
+     * @param compressed Whether the body is gzip-compressed and sent with {@code Content-Encoding: gzip}.
+     */
+    public JsonBody(JSONObject json, boolean compressed) {
+        this.json = json;
+        this.compressed = compressed;
+    }
+
+    /**
+     * @return The same body without compression.
+     */
+    public JsonBody uncompressed() {
+        return compressed ? new JsonBody(json, false) : this;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * @return The value of the Content-Encoding header, if the body is compressed.
+     */
+    public Optional<String> getContentEncoding() {
+        return compressed ? Optional.of("gzip") : Optional.empty();
+    }
+
+    /**
+     * Serializes the body into the given stream, which is left open.
+     *
+     * @param out The stream to write to, usually the request body of a connection.
+     * @throws IOException If the stream cannot be written.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        CountingOutputStream counter = new CountingOutputStream(out);
+        OutputStream target = compressed ? new GZIPOutputStream(counter, GZIP_BUFFER_SIZE) : counter;
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(target, JsonEncoding.UTF8)) {
+            write(generator, json);
+        }
+        if (compressed) {
+            ((GZIPOutputStream) target).finish();
+        }
+        counter.flush();
+        lastLength = counter.count;
+        lastWriteNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Serializes the body into a byte array, for transports that need the whole body before sending it. When the
+     * body is compressed, only the compressed bytes are held.
+     *
+     * @return The encoded body.
+     * @throws IOException If the body cannot be serialized.
+     */
+    public byte[] toByteArray() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+        writeTo(buffer);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * @return The number of bytes, after compression, of the last time the body was written.
+     */
+    public long getLastLength() {
+        return lastLength;
+    }
+
+    /**
+     * @return How long the body took to be written the last time, including the time the stream took to accept
+     * it.
+     */
+    public long getLastWriteNanos() {
+        return lastWriteNanos;
+    }
+
+    private static void write(JsonGenerator generator, Object value) throws IOException {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            generator.writeStartObject();
+            for (String key : object.keySet()) {
+                generator.writeFieldName(key);
+                write(generator, object.opt(key));
+            }
+            generator.writeEndObject();
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            generator.writeStartArray();
+            for (int i = 0; i < array.length(); i++) {
+                write(generator, array.opt(i));
+            }
+            generator.writeEndArray();
+        } else if (value == null || JSONObject.NULL.equals(value)) {
+            generator.writeNull();
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            generator.writeNumber(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            generator.writeNumber((Long) value);
+        } else if (value instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            generator.writeNumber((BigInteger) value);
+        } else if (value instanceof Number) {
+            generator.writeNumber(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            count += length;
+        }
+
+        @Override
+        public void close() {
+            // The underlying stream belongs to the caller
+        }
+    }
+}
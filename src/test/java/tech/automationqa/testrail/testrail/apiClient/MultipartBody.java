@@ -0,0 +1,73 @@
+package tech.automationqa.testrail.testrail.apiClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * MultipartBody is a {@code multipart/form-data} request body carrying a single file. The part headers and the
+ * closing boundary are small byte arrays, while the file itself is read from disk as the body is sent, so
+ * uploading a large file never loads it onto the heap. The length is known up front, which lets transports send
+ * the body with a fixed {@code Content-Length} instead of chunked encoding.
+ */
+public class MultipartBody {
+    private static final String CRLF = "\r\n";
+
+    private final Path file;
+    private final String boundary;
+    private final byte[] head;
+    private final byte[] tail;
+    private final long length;
+
+    /**
+     * Constructor for MultipartBody.
+     *
+     * @param fieldName The name of the form field, {@code attachment} for TestRail.
+     * @param file      The file to send.
+     * @throws IOException If the size of the file cannot be read.
+     */
+    public MultipartBody(String fieldName, Path file) throws IOException {
+        this.file = file;
+        this.boundary = "----testrail" + UUID.randomUUID().toString().replace("-", "");
+        String fileName = file.getFileName().toString().replace("\"", "'");
+        this.head = ("--" + boundary + CRLF
+                + "Content-Disposition: form-data; name=\"" + fieldName + "\"; filename=\"" + fileName + "\"" + CRLF
+                + "Content-Type: application/octet-stream" + CRLF + CRLF).getBytes(StandardCharsets.UTF_8);
+        this.tail = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.UTF_8);
+        this.length = head.length + Files.size(file) + tail.length;
+    }
+
+    /**
+     * @return The value of the Content-Type header, including the boundary.
+     */
+    public String getContentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    /**
+     * @return The exact number of bytes of the body.
+     */
+    public long getContentLength() {
+        return length;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Opens a new stream over the whole body. It can be called again to resend the body after a retry.
+     *
+     * @return The stream; the caller must close it.
+     * @throws IOException If the file cannot be opened.
+     */
+    public InputStream open() throws IOException {
+        return new SequenceInputStream(new ByteArrayInputStream(head),
+                new SequenceInputStream(Files.newInputStream(file), new ByteArrayInputStream(tail)));
+    }
+}
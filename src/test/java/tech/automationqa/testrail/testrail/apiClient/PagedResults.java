@@ -0,0 +1,206 @@
+package tech.automationqa.testrail.testrail.apiClient;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * PagedResults lazily iterates over the entities of a TestRail list endpoint. Each page is streamed through a
+ * Jackson parser and its elements are yielded one at a time, so neither the response body nor the full list is
+ * ever held in memory. Both the paginated envelope of newer TestRail versions
+ * ({@code {"_links": {"next": ...}, "cases": [...]}}) and the bare array returned by older versions are supported.
+ * <p>
+ * A page is released once it has been read to the end or has failed. Callers that may stop iterating earlier open
+ * the results in a try-with-resources block, so the page still open is released by {@link #close()}.
+ *
+ * @param <T> The type of the entities yielded.
+ */
+public class PagedResults<T> implements Iterable<T>, AutoCloseable {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String API_PREFIX = "index.php?";
+
+    private final APIClient client;
+    private final String firstPageUri;
+    private final String arrayField;
+    private final ElementReader<T> reader;
+    private final Set<PageIterator> openIterators = new HashSet<>();
+
+    /**
+     * Reads a single element from a parser positioned on its START_OBJECT token.
+     *
+     * @param <T> The type of the element.
+     */
+    @FunctionalInterface
+    public interface ElementReader<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+
+    /**
+     * Constructor for PagedResults.
+     *
+     * @param client       The API client used to fetch each page.
+     * @param firstPageUri The URI of the first page.
+     * @param arrayField   The name of the field holding the entities in the paginated envelope.
+     * @param reader       Reads a single entity from the parser.
+     */
+    public PagedResults(APIClient client, String firstPageUri, String arrayField, ElementReader<T> reader) {
+        this.client = client;
+        this.firstPageUri = firstPageUri;
+        this.arrayField = arrayField;
+        this.reader = reader;
+    }
+
+    /**
+     * Starts a new pass over all pages. The first page is only requested once {@code hasNext} is called.
+     *
+     * @return An iterator over the entities of every page.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new PageIterator();
+    }
+
+    /**
+     * Releases the page held open by every iterator that was not read to the end.
+     */
+    @Override
+    public void close() {
+        List<PageIterator> iterators;
+        synchronized (openIterators) {
+            iterators = new ArrayList<>(openIterators);
+        }
+        iterators.forEach(PageIterator::close);
+    }
+
+    private class PageIterator implements Iterator<T> {
+        private String nextPageUri = firstPageUri;
+        private InputStream stream;
+        private JsonParser parser;
+        private T next;
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            try {
+                next = advance();
+            } catch (IOException e) {
+                close();
+                throw new APIException("Failed to read page " + nextPageUri, e);
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T element = next;
+            next = null;
+            return element;
+        }
+
+        private T advance() throws IOException {
+            while (true) {
+                if (parser == null) {
+                    if (nextPageUri == null) {
+                        return null;
+                    }
+                    String uri = nextPageUri;
+                    nextPageUri = null;
+                    openPage(uri);
+                    continue;
+                }
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_OBJECT) {
+                    return reader.read(parser);
+                }
+                // End of this page's array: read the rest of the envelope for the next link.
+                readEnvelope();
+                close();
+            }
+        }
+
+        private void openPage(String uri) throws IOException {
+            stream = client.sendGetStream(uri);
+            synchronized (openIterators) {
+                openIterators.add(this);
+            }
+            parser = JSON_FACTORY.createParser(stream);
+            JsonToken root = parser.nextToken();
+            if (root == JsonToken.START_ARRAY) {
+                return;
+            }
+            if (root != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected response from " + uri);
+            }
+            readEnvelope();
+        }
+
+        /**
+         * Reads envelope fields until the entity array starts or the envelope ends.
+         */
+        private void readEnvelope() throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (arrayField.equals(field) && value == JsonToken.START_ARRAY) {
+                    return;
+                } else if ("_links".equals(field) && value == JsonToken.START_OBJECT) {
+                    readLinks();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (token != JsonToken.END_OBJECT && token != null) {
+                throw new IOException("Malformed page envelope");
+            }
+        }
+
+        private void readLinks() throws IOException {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("next".equals(field) && parser.currentToken() == JsonToken.VALUE_STRING) {
+                    nextPageUri = API_PREFIX + parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        private void close() {
+            try {
+                if (parser != null) {
+                    parser.close();
+                }
+                if (stream != null) {
+                    stream.close();
+                }
+            } catch (IOException ignored) {
+                // The page has been consumed, a failure to release it does not affect the results.
+            } finally {
+                parser = null;
+                stream = null;
+                synchronized (openIterators) {
+                    openIterators.remove(this);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package tech.automationqa.testrail.testrail.apiClient;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RateLimiter is a client-side token bucket shared by all requests of an {@link APIClient}. Its rate adapts to the
+ * server: every throttled response halves the current rate and every successful one raises it again by a small
+ * step until the configured maximum is reached, so many clients sharing one TestRail instance settle on what the
+ * server can actually take.
+ */
+public class RateLimiter {
+    private static final double INCREASE_FRACTION = 0.05;
+
+    private final double maxPermitsPerSecond;
+    private final double minPermitsPerSecond;
+    private final double burst;
+    private double permitsPerSecond;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * Constructor for RateLimiter.
+     *
+     * @param maxPermitsPerSecond The highest request rate the limiter allows.
+     * @param burst               The number of requests that may be sent back to back after an idle period.
+     */
+    public RateLimiter(double maxPermitsPerSecond, int burst) {
+        if (maxPermitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.maxPermitsPerSecond = maxPermitsPerSecond;
+        this.minPermitsPerSecond = Math.min(0.2, maxPermitsPerSecond);
+        this.burst = burst;
+        this.permitsPerSecond = maxPermitsPerSecond;
+        this.tokens = burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes a permit, waiting until one is available.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes a permit without waiting for it.
+     *
+     * @return How long the caller must wait, in nanoseconds, before using the permit.
+     */
+    public synchronized long reserve() {
+        refill();
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens / permitsPerSecond * 1_000_000_000L);
+    }
+
+    /**
+     * Halves the current rate after the server throttled a request.
+     */
+    public synchronized void onThrottled() {
+        refill();
+        permitsPerSecond = Math.max(minPermitsPerSecond, permitsPerSecond / 2);
+    }
+
+    /**
+     * Raises the current rate by a small step after a successful request.
+     */
+    public synchronized void onSuccess() {
+        refill();
+        permitsPerSecond = Math.min(maxPermitsPerSecond, permitsPerSecond + maxPermitsPerSecond * INCREASE_FRACTION);
+    }
+
+    /**
+     * @return The rate the limiter currently allows, in requests per second.
+     */
+    public synchronized double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) / 1_000_000_000d * permitsPerSecond);
+        lastRefillNanos = now;
+    }
+}
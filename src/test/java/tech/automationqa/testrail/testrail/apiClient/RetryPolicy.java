@@ -0,0 +1,57 @@
+package tech.automationqa.testrail.testrail.apiClient;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * RetryPolicy decides how often and after which delay a failed request is sent again. Delays grow exponentially
+ * with full jitter, so clients that failed together do not retry together, and a {@code Retry-After} sent by the
+ * server always takes precedence over the computed delay.
+ */
+public class RetryPolicy {
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    /**
+     * Constructor for RetryPolicy.
+     *
+     * @param maxRetries The number of times a request may be sent again after its first attempt.
+     * @param baseDelay  The upper bound of the delay before the first retry.
+     * @param maxDelay   The upper bound of any computed delay.
+     */
+    public RetryPolicy(int maxRetries, Duration baseDelay, Duration maxDelay) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("Retries must not be negative");
+        }
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = baseDelay.toMillis();
+        this.maxDelayMillis = maxDelay.toMillis();
+    }
+
+    /**
+     * @return A policy that never retries.
+     */
+    public static RetryPolicy none() {
+        return new RetryPolicy(0, Duration.ZERO, Duration.ZERO);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Computes the delay before the given retry.
+     *
+     * @param retry      The retry about to be made, starting at 1.
+     * @param retryAfter The delay requested by the server, or null if none was sent.
+     * @return The delay to wait before sending the request again.
+     */
+    public Duration delayBefore(int retry, Duration retryAfter) {
+        if (retryAfter != null) {
+            return retryAfter;
+        }
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(retry - 1, 20));
+        return Duration.ofMillis(ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+}
@@ -0,0 +1,67 @@
+package tech.automationqa.testrail.testrail.apiClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * TransportResponse holds the status, headers and body stream of a response received by an {@link HttpTransport}.
+ */
+public class TransportResponse {
+    private final int status;
+    private final Map<String, List<String>> headers;
+    private final InputStream body;
+
+    /**
+     * Constructor for TransportResponse.
+     *
+     * @param status  The HTTP status code.
+     * @param headers The response headers, keyed by lower-case header name.
+     * @param body    The response body, or null if the response has none.
+     */
+    public TransportResponse(int status, Map<String, List<String>> headers, InputStream body) {
+        this.status = status;
+        this.headers = headers == null ? Collections.emptyMap() : headers;
+        this.body = body;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public InputStream getBody() {
+        return body;
+    }
+
+    /**
+     * Returns the first value of a response header.
+     *
+     * @param name The header name, matched case-insensitively.
+     * @return The header value, if present.
+     */
+    public Optional<String> getHeader(String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey() != null && header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty()) {
+                return Optional.of(header.getValue().get(0));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return A copy of this response whose body has been read fully into memory.
+     * @throws IOException If the body could not be read.
+     */
+    TransportResponse buffered() throws IOException {
+        if (body == null || body instanceof ByteArrayInputStream) {
+            return this;
+        }
+        try (InputStream in = body) {
+            return new TransportResponse(status, headers, new ByteArrayInputStream(in.readAllBytes()));
+        }
+    }
+}
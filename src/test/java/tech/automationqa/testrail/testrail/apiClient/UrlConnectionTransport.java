@@ -0,0 +1,99 @@
+package tech.automationqa.testrail.testrail.apiClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+
+/**
+ * UrlConnectionTransport sends every request through its own {@link HttpURLConnection}. It is kept as a fallback
+ * for environments where {@link HttpClientTransport} cannot be used.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+    private static final int STREAMING_CHUNK_SIZE = 64 * 1024;
+
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    /**
+     * Constructor for UrlConnectionTransport.
+     *
+     * @param connectTimeout The maximum time to wait for a connection to be established.
+     * @param readTimeout    The maximum time to wait for data once the connection is established.
+     */
+    public UrlConnectionTransport(Duration connectTimeout, Duration readTimeout) {
+        this.connectTimeoutMillis = (int) connectTimeout.toMillis();
+        this.readTimeoutMillis = (int) readTimeout.toMillis();
+    }
+
+    @Override
+    public TransportResponse send(String method, String url, String authorization, byte[] body) throws IOException {
+        HttpURLConnection conn = open(url, method, authorization, "application/json");
+
+        if (body != null) {
+            conn.setDoOutput(true);
+            try (OutputStream outputStream = conn.getOutputStream()) {
+                outputStream.write(body);
+            }
+        }
+
+        return respond(conn);
+    }
+
+    @Override
+    public TransportResponse sendJson(String url, String authorization, JsonBody body) throws IOException {
+        HttpURLConnection conn = open(url, "POST", authorization, "application/json");
+        body.getContentEncoding().ifPresent(encoding -> conn.addRequestProperty("Content-Encoding", encoding));
+        conn.setDoOutput(true);
+        // The length is only known once the body is written, chunked encoding keeps it from being buffered
+        conn.setChunkedStreamingMode(STREAMING_CHUNK_SIZE);
+        try (OutputStream outputStream = conn.getOutputStream()) {
+            body.writeTo(outputStream);
+        }
+        return respond(conn);
+    }
+
+    @Override
+    public TransportResponse sendMultipart(String url, String authorization, MultipartBody body) throws IOException {
+        HttpURLConnection conn = open(url, "POST", authorization, body.getContentType());
+        conn.setDoOutput(true);
+        // Without a fixed length the connection buffers the whole body to compute Content-Length
+        conn.setFixedLengthStreamingMode(body.getContentLength());
+        try (InputStream inputStream = body.open(); OutputStream outputStream = conn.getOutputStream()) {
+            inputStream.transferTo(outputStream);
+        }
+        return respond(conn);
+    }
+
+    @Override
+    public TransportResponse download(String url, String authorization, long rangeStart) throws IOException {
+        HttpURLConnection conn = open(url, "GET", authorization, "application/json");
+        if (rangeStart > 0) {
+            conn.addRequestProperty("Range", "bytes=" + rangeStart + "-");
+        }
+        return respond(conn);
+    }
+
+    private HttpURLConnection open(String url, String method, String authorization, String contentType) throws IOException {
+        HttpURLConnection conn;
+        try {
+            conn = (HttpURLConnection) new URI(url).toURL().openConnection();
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid request URL " + url, e);
+        }
+        conn.setConnectTimeout(connectTimeoutMillis);
+        conn.setReadTimeout(readTimeoutMillis);
+        conn.setRequestMethod(method);
+        conn.addRequestProperty("Authorization", authorization);
+        conn.addRequestProperty("Content-Type", contentType);
+        return conn;
+    }
+
+    private static TransportResponse respond(HttpURLConnection conn) throws IOException {
+        int status = conn.getResponseCode();
+        return new TransportResponse(status, conn.getHeaderFields(), status != 200 && status != 206 ? conn.getErrorStream() : conn.getInputStream());
+    }
+}
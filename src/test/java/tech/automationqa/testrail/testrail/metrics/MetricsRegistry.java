@@ -0,0 +1,228 @@
+package tech.automationqa.testrail.testrail.metrics;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The {@code MetricsRegistry} class collects the timings and counters of a publishing run: the latency of every
+ * TestRail endpoint, bytes on the wire, retries, and the duration of each phase of the pipeline. Metrics belong to
+ * a family, such as {@link #HTTP_REQUEST}, and are labelled within it, such as the endpoint {@code get_cases}. The
+ * registry can be written as JSON or in the Prometheus text format, and summarized on a single log line.
+ */
+public class MetricsRegistry {
+    // Timer families
+    public static final String HTTP_REQUEST = "http_request";
+    public static final String SERIALIZE = "serialize";
+    public static final String PHASE = "phase";
+
+    // Counter families
+    public static final String BYTES_SENT = "http_bytes_sent";
+    public static final String BYTES_RECEIVED = "http_bytes_received";
+    public static final String RETRIES = "http_retries";
+    public static final String THROTTLES = "http_throttles";
+    public static final String ERRORS = "http_errors";
+
+    private static final String PROMETHEUS_PREFIX = "testrail_";
+
+    private final ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, LongAdder>> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Records a duration.
+     *
+     * @param family The timer family, such as {@link #HTTP_REQUEST}.
+     * @param label  The label within the family, such as an endpoint or a phase name.
+     * @param nanos  The duration in nanoseconds.
+     */
+    public void record(String family, String label, long nanos) {
+        timers.computeIfAbsent(family, f -> new ConcurrentHashMap<>()).computeIfAbsent(label, l -> new LatencyHistogram()).record(nanos);
+    }
+
+    /**
+     * Runs an action and records how long it took, whether or not it succeeded.
+     *
+     * @param family The timer family.
+     * @param label  The label within the family.
+     * @param action The action to time.
+     * @return The result of the action.
+     */
+    public <T> T time(String family, String label, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            record(family, label, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Adds to a counter.
+     *
+     * @param family The counter family, such as {@link #BYTES_SENT}.
+     * @param label  The label within the family.
+     * @param delta  The amount to add.
+     */
+    public void increment(String family, String label, long delta) {
+        counters.computeIfAbsent(family, f -> new ConcurrentHashMap<>()).computeIfAbsent(label, l -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * @return The histogram of a timer, or null if nothing was recorded for it.
+     */
+    public LatencyHistogram getTimer(String family, String label) {
+        Map<String, LatencyHistogram> labels = timers.get(family);
+        return labels == null ? null : labels.get(label);
+    }
+
+    /**
+     * @return The value of a counter, or 0 if nothing was added to it.
+     */
+    public long getCounter(String family, String label) {
+        Map<String, LongAdder> labels = counters.get(family);
+        LongAdder counter = labels == null ? null : labels.get(label);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * @return The metrics as a JSON document, with count, sum, max and estimated percentiles for every timer.
+     */
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        JSONObject timersJson = new JSONObject();
+        sorted(timers).forEach((family, labels) -> {
+            JSONObject familyJson = new JSONObject();
+            sorted(labels).forEach((label, histogram) -> familyJson.put(label, new JSONObject()
+                    .put("count", histogram.getCount())
+                    .put("sum_ms", round(histogram.getSumMillis()))
+                    .put("max_ms", round(histogram.getMaxMillis()))
+                    .put("p50_ms", round(histogram.percentileMillis(0.50)))
+                    .put("p95_ms", round(histogram.percentileMillis(0.95)))
+                    .put("p99_ms", round(histogram.percentileMillis(0.99)))));
+            timersJson.put(family, familyJson);
+        });
+        JSONObject countersJson = new JSONObject();
+        sorted(counters).forEach((family, labels) -> {
+            JSONObject familyJson = new JSONObject();
+            sorted(labels).forEach((label, counter) -> familyJson.put(label, counter.sum()));
+            countersJson.put(family, familyJson);
+        });
+        return json.put("timers", timersJson).put("counters", countersJson);
+    }
+
+    /**
+     * @return The metrics in the Prometheus text exposition format: a {@code _seconds} histogram per timer family
+     * and a {@code _total} counter per counter family.
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        sorted(timers).forEach((family, labels) -> {
+            String name = PROMETHEUS_PREFIX + family + "_seconds";
+            String label = labelName(family);
+            out.append("# TYPE ").append(name).append(" histogram\n");
+            sorted(labels).forEach((value, histogram) -> {
+                long[] counts = histogram.getBucketCounts();
+                long cumulative = 0;
+                for (int i = 0; i < LatencyHistogram.BUCKET_BOUNDS_MILLIS.length; i++) {
+                    cumulative += counts[i];
+                    out.append(name).append("_bucket{").append(label).append("=\"").append(escape(value)).append("\",le=\"")
+                            .append(LatencyHistogram.BUCKET_BOUNDS_MILLIS[i] / 1000d).append("\"} ").append(cumulative).append('\n');
+                }
+                cumulative += counts[counts.length - 1];
+                out.append(name).append("_bucket{").append(label).append("=\"").append(escape(value)).append("\",le=\"+Inf\"} ").append(cumulative).append('\n');
+                out.append(name).append("_sum{").append(label).append("=\"").append(escape(value)).append("\"} ")
+                        .append(String.format(Locale.ROOT, "%.6f", histogram.getSumMillis() / 1000d)).append('\n');
+                out.append(name).append("_count{").append(label).append("=\"").append(escape(value)).append("\"} ").append(histogram.getCount()).append('\n');
+            });
+        });
+        sorted(counters).forEach((family, labels) -> {
+            String name = PROMETHEUS_PREFIX + family + "_total";
+            out.append("# TYPE ").append(name).append(" counter\n");
+            sorted(labels).forEach((value, counter) -> out.append(name).append('{').append(labelName(family)).append("=\"")
+                    .append(escape(value)).append("\"} ").append(counter.sum()).append('\n'));
+        });
+        return out.toString();
+    }
+
+    /**
+     * @return A one-line summary: request count and p95 per endpoint, bytes on the wire, retries and phase durations.
+     */
+    public String summary() {
+        StringBuilder line = new StringBuilder();
+        long requests = 0;
+        StringBuilder endpoints = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> entry : sorted(timers.getOrDefault(HTTP_REQUEST, new ConcurrentHashMap<>())).entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            requests += histogram.getCount();
+            endpoints.append(endpoints.length() == 0 ? "" : ", ").append(entry.getKey()).append(' ').append(histogram.getCount())
+                    .append("x p95 ").append(Math.round(histogram.percentileMillis(0.95))).append(" ms");
+        }
+        line.append(requests).append(" requests");
+        if (endpoints.length() > 0) {
+            line.append(" (").append(endpoints).append(')');
+        }
+        line.append(", ").append(formatBytes(sum(BYTES_SENT))).append(" sent, ").append(formatBytes(sum(BYTES_RECEIVED))).append(" received, ")
+                .append(sum(RETRIES)).append(" retries, ").append(sum(ERRORS)).append(" errors");
+        sorted(timers.getOrDefault(PHASE, new ConcurrentHashMap<>())).forEach((phase, histogram) ->
+                line.append("; ").append(phase).append(' ').append(Math.round(histogram.getSumMillis())).append(" ms"));
+        return line.toString();
+    }
+
+    /**
+     * Writes the metrics to {@code metrics.json} and {@code metrics.prom} in the given directory.
+     *
+     * @param directory  The directory to write to; it is created if missing.
+     * @param json       Whether to write the JSON file.
+     * @param prometheus Whether to write the Prometheus text file.
+     * @throws IOException If a file cannot be written.
+     */
+    public void export(Path directory, boolean json, boolean prometheus) throws IOException {
+        Files.createDirectories(directory);
+        if (json) {
+            Files.write(directory.resolve("metrics.json"), toJson().toString(2).getBytes(StandardCharsets.UTF_8));
+        }
+        if (prometheus) {
+            Files.write(directory.resolve("metrics.prom"), toPrometheus().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private long sum(String family) {
+        Map<String, LongAdder> labels = counters.get(family);
+        return labels == null ? 0 : labels.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    private static String labelName(String family) {
+        return PHASE.equals(family) ? "phase" : "endpoint";
+    }
+
+    private static <V> Map<String, V> sorted(Map<String, V> map) {
+        return new TreeMap<>(map);
+    }
+
+    private static double round(double millis) {
+        return Math.round(millis * 1000) / 1000d;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        return bytes < 1024 * 1024
+                ? String.format(Locale.ROOT, "%.1f KB", bytes / 1024d)
+                : String.format(Locale.ROOT, "%.1f MB", bytes / (1024d * 1024d));
+    }
+}
@@ -0,0 +1,56 @@
+package tech.automationqa.testrail.testrail.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * A lightweight view of a test in a TestRail run holding only its case ID and current status. Every other field of
+ * the test is skipped while parsing.
+ */
+public class RunTest {
+    private final int caseId;
+    private final int statusId;
+
+    public RunTest(int caseId, int statusId) {
+        this.caseId = caseId;
+        this.statusId = statusId;
+    }
+
+    public int getCaseId() {
+        return caseId;
+    }
+
+    /**
+     * @return The status of the latest result, or 0 if TestRail did not report one.
+     */
+    public int getStatusId() {
+        return statusId;
+    }
+
+    /**
+     * Reads a test from a parser positioned on the test's START_OBJECT token and leaves it on the matching
+     * END_OBJECT token.
+     *
+     * @param parser The parser to read from.
+     * @return The parsed test.
+     * @throws IOException If the JSON could not be read.
+     */
+    public static RunTest read(JsonParser parser) throws IOException {
+        int caseId = 0;
+        int statusId = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("case_id".equals(field)) {
+                caseId = parser.getValueAsInt(0);
+            } else if ("status_id".equals(field)) {
+                statusId = value == JsonToken.VALUE_NULL ? 0 : parser.getValueAsInt(0);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new RunTest(caseId, statusId);
+    }
+}
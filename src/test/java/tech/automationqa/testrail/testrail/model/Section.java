@@ -0,0 +1,52 @@
+package tech.automationqa.testrail.testrail.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * A lightweight view of a TestRail section holding only its ID and name.
+ */
+public class Section {
+    private final int id;
+    private final String name;
+
+    public Section(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Reads a section from a parser positioned on the section's START_OBJECT token and leaves it on the matching
+     * END_OBJECT token.
+     *
+     * @param parser The parser to read from.
+     * @return The parsed section.
+     * @throws IOException If the JSON could not be read.
+     */
+    public static Section read(JsonParser parser) throws IOException {
+        int id = 0;
+        String name = "";
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("id".equals(field)) {
+                id = parser.getIntValue();
+            } else if ("name".equals(field)) {
+                name = parser.getValueAsString(name);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Section(id, name);
+    }
+}
@@ -0,0 +1,132 @@
+package tech.automationqa.testrail.testrail.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A lightweight view of a TestRail test case holding only the fields used for matching results and generating
+ * feature files. Every other field of the case is skipped while parsing.
+ */
+public class TestCase {
+    private final int id;
+    private final String title;
+    private final int sectionId;
+    private final List<Step> steps;
+
+    public TestCase(int id, String title, int sectionId, List<Step> steps) {
+        this.id = id;
+        this.title = title;
+        this.sectionId = sectionId;
+        this.steps = steps;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public int getSectionId() {
+        return sectionId;
+    }
+
+    /**
+     * @return The separated steps of the case, or an empty list if the case has none.
+     */
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Reads a test case from a parser positioned on the case's START_OBJECT token and leaves it on the matching
+     * END_OBJECT token.
+     *
+     * @param parser The parser to read from.
+     * @return The parsed test case.
+     * @throws IOException If the JSON could not be read.
+     */
+    public static TestCase read(JsonParser parser) throws IOException {
+        int id = 0;
+        int sectionId = 0;
+        String title = "Untitled";
+        List<Step> steps = Collections.emptyList();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id":
+                    id = parser.getIntValue();
+                    break;
+                case "title":
+                    title = parser.getValueAsString(title);
+                    break;
+                case "section_id":
+                    sectionId = value == JsonToken.VALUE_NULL ? 0 : parser.getIntValue();
+                    break;
+                case "custom_steps_separated":
+                    if (value == JsonToken.START_ARRAY) {
+                        steps = readSteps(parser);
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new TestCase(id, title, sectionId, steps);
+    }
+
+    private static List<Step> readSteps(JsonParser parser) throws IOException {
+        List<Step> steps = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String content = null;
+            String expected = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("content".equals(field)) {
+                    content = parser.getValueAsString();
+                } else if ("expected".equals(field)) {
+                    expected = parser.getValueAsString();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            steps.add(new Step(content, expected));
+        }
+        return steps;
+    }
+
+    /**
+     * A single separated step of a test case.
+     */
+    public static class Step {
+        private final String content;
+        private final String expected;
+
+        public Step(String content, String expected) {
+            this.content = content;
+            this.expected = expected;
+        }
+
+        /**
+         * @return The action of the step, or null if none was provided.
+         */
+        public String getContent() {
+            return content;
+        }
+
+        /**
+         * @return The expected result of the step, or null if none was provided.
+         */
+        public String getExpected() {
+            return expected;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package tech.automationqa.testrail.testrail.services;
+
+import com.intuit.karate.Logger;
+import tech.automationqa.testrail.testrail.apiClient.APIService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code AttachmentDownloader} class downloads many TestRail attachments at once, for instance the evidence of
+ * past runs pulled for trend analysis. Downloads run on a bounded pool and every file is streamed to disk; a file
+ * that failed halfway is resumed from where it stopped when it is downloaded again.
+ */
+public class AttachmentDownloader {
+    private static final Logger LOGGER = new Logger();
+
+    private final APIService api;
+    private final int threads;
+    private final boolean virtualThreads;
+
+    /**
+     * Constructs an {@code AttachmentDownloader}.
+     *
+     * @param api     The API service used to download the files.
+     * @param threads The number of files downloaded concurrently.
+     */
+    public AttachmentDownloader(APIService api, int threads) {
+        this(api, threads, false);
+    }
+
+    /**
+     * Constructs an {@code AttachmentDownloader}.
+     *
+     * @param api            The API service used to download the files.
+     * @param threads        The number of files downloaded concurrently.
+     * @param virtualThreads Whether the files are downloaded on virtual threads, see {@link IoExecutors}.
+     */
+    public AttachmentDownloader(APIService api, int threads, boolean virtualThreads) {
+        this.api = api;
+        this.threads = threads;
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Downloads the given attachments and waits for all of them. A failed download does not stop the others.
+     *
+     * @param attachments The target file of each attachment, keyed by attachment ID.
+     * @return A summary of the downloads.
+     */
+    public DownloadSummary downloadAll(Map<String, Path> attachments) {
+        AtomicInteger downloaded = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        List<String> failed = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = IoExecutors.newFixedPool("testrail-download", Math.max(1, Math.min(threads, attachments.size())), virtualThreads);
+        for (Map.Entry<String, Path> attachment : attachments.entrySet()) {
+            executor.execute(() -> {
+                try {
+                    Path parent = attachment.getValue().toAbsolutePath().getParent();
+                    if (parent != null) {
+                        Files.createDirectories(parent);
+                    }
+                    bytes.addAndGet(api.getAttachment(attachment.getKey(), attachment.getValue()));
+                    downloaded.incrementAndGet();
+                } catch (IOException | RuntimeException e) {
+                    failed.add(attachment.getKey());
+                    LOGGER.warn("Failed to download attachment {} to {}: {}", attachment.getKey(), attachment.getValue(), e.getMessage());
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.HOURS)) {
+                LOGGER.warn("Attachment downloads did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        DownloadSummary summary = new DownloadSummary(downloaded.get(), bytes.get(), new ArrayList<>(failed));
+        LOGGER.info("Downloaded {} attachments ({} bytes), {} failed", summary.getDownloaded(), summary.getBytes(), summary.getFailed().size());
+        return summary;
+    }
+
+    /**
+     * Summary of a batch of attachment downloads.
+     */
+    public static class DownloadSummary {
+        private final int downloaded;
+        private final long bytes;
+        private final List<String> failed;
+
+        DownloadSummary(int downloaded, long bytes, List<String> failed) {
+            this.downloaded = downloaded;
+            this.bytes = bytes;
+            this.failed = failed;
+        }
+
+        public int getDownloaded() {
+            return downloaded;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return The IDs of the attachments that could not be downloaded; calling again resumes their partial files.
+         */
+        public List<String> getFailed() {
+            return failed;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package tech.automationqa.testrail.testrail.services;
+
+import com.intuit.karate.Logger;
+import com.intuit.karate.core.Embed;
+import com.intuit.karate.core.ScenarioResult;
+import com.intuit.karate.core.StepResult;
+import tech.automationqa.testrail.testrail.apiClient.APIService;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code AttachmentUploader} class attaches the evidence of failed scenarios to their TestRail results: the
+ * request and response logs of the steps, the files embedded in the report (such as screenshots) and the feature's
+ * HTML report. Uploads run on a bounded pool once the results have been created, and every file is streamed from
+ * disk. Files above the size cap are skipped, and a file whose content was already uploaded during the run is only
+ * uploaded once, to the first result that carried it.
+ */
+public class AttachmentUploader {
+    private static final Logger LOGGER = new Logger();
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    private final APIService api;
+    private final long maxBytes;
+    private final Path reportDirectory;
+    private final Path logDirectory;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, Integer> uploadedHashes = new ConcurrentHashMap<>();
+    private final AtomicInteger uploaded = new AtomicInteger();
+    private final AtomicInteger duplicates = new AtomicInteger();
+    private final AtomicInteger tooLarge = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Constructs an {@code AttachmentUploader} and starts its pool.
+     *
+     * @param api             The API service used to upload the files.
+     * @param threads         The number of files uploaded concurrently.
+     * @param maxBytes        Files larger than this are not uploaded.
+     * @param reportDirectory The Karate report directory holding the embedded files and HTML reports.
+     * @param logDirectory    The directory the step logs are written to before they are uploaded.
+     * @param virtualThreads  Whether the files are uploaded on virtual threads, see {@link IoExecutors}.
+     */
+    public AttachmentUploader(APIService api, int threads, long maxBytes, Path reportDirectory, Path logDirectory, boolean virtualThreads) {
+        this.api = api;
+        this.maxBytes = maxBytes;
+        this.reportDirectory = reportDirectory;
+        this.logDirectory = logDirectory;
+        this.executor = IoExecutors.newFixedPool("testrail-attachment", threads, virtualThreads);
+    }
+
+    /**
+     * Queues the evidence of a failed scenario for upload to its result. Returns immediately.
+     *
+     * @param resultId The ID of the TestRail result created for the scenario.
+     * @param caseId   The ID of the scenario's test case, used to name the step log.
+     * @param result   The result of the failed scenario.
+     */
+    public void submit(int resultId, int caseId, ScenarioResult result) {
+        executor.execute(() -> {
+            List<Path> files;
+            try {
+                files = collectEvidence(result, caseId, resultId);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to collect the evidence of case {}: {}", caseId, e.getMessage());
+                return;
+            }
+            files.forEach(file -> upload(resultId, file));
+        });
+    }
+
+    /**
+     * Waits for all queued uploads to finish and stops the pool.
+     *
+     * @return A summary of the uploads.
+     */
+    public AttachmentSummary finish() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.HOURS)) {
+                LOGGER.warn("Attachment uploads did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        AttachmentSummary summary = new AttachmentSummary(uploaded.get(), duplicates.get(), tooLarge.get(), failed.get(), bytes.get());
+        LOGGER.info("Uploaded {} attachments ({} bytes), {} duplicates and {} files over the size limit skipped, {} failed",
+                summary.getUploaded(), summary.getBytes(), summary.getDuplicates(), summary.getTooLarge(), summary.getFailed());
+        return summary;
+    }
+
+    private void upload(int resultId, Path file) {
+        try {
+            long size = Files.size(file);
+            if (size > maxBytes) {
+                tooLarge.incrementAndGet();
+                LOGGER.warn("Not attaching {} to result {}: {} bytes exceed the limit of {}", file, resultId, size, maxBytes);
+                return;
+            }
+            String hash = sha256(file);
+            Integer firstResult = uploadedHashes.putIfAbsent(hash, resultId);
+            if (firstResult != null) {
+                duplicates.incrementAndGet();
+                LOGGER.debug("Not attaching {} to result {}: identical content was attached to result {}", file, resultId, firstResult);
+                return;
+            }
+            try {
+                api.addAttachmentToResult(resultId, file);
+            } catch (RuntimeException e) {
+                // The content was not attached anywhere, so a later copy of it must not be skipped as a duplicate
+                uploadedHashes.remove(hash, resultId);
+                throw e;
+            }
+            uploaded.incrementAndGet();
+            bytes.addAndGet(size);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            LOGGER.warn("Failed to attach {} to result {}: {}", file, resultId, e.getMessage());
+        }
+    }
+
+    /**
+     * Lists the files to attach for a failed scenario, writing its step logs to a file first.
+     */
+    private List<Path> collectEvidence(ScenarioResult result, int caseId, int resultId) throws IOException {
+        List<Path> files = new ArrayList<>();
+        StringBuilder log = new StringBuilder();
+        for (StepResult stepResult : result.getStepResults()) {
+            String stepLog = stepResult.getStepLog();
+            if (stepLog != null && !stepLog.isEmpty()) {
+                log.append(stepResult.getStep().getPrefix()).append(' ').append(stepResult.getStep().getText()).append('\n').append(stepLog).append('\n');
+            }
+            if (stepResult.getEmbeds() != null) {
+                for (Embed embed : stepResult.getEmbeds()) {
+                    File embedded = embed.getFile();
+                    if (embedded != null && embedded.isFile()) {
+                        files.add(embedded.toPath());
+                    }
+                }
+            }
+        }
+        if (log.length() > 0) {
+            Files.createDirectories(logDirectory);
+            Path logFile = logDirectory.resolve("C" + caseId + "-R" + resultId + ".log");
+            Files.write(logFile, log.toString().getBytes(StandardCharsets.UTF_8));
+            files.add(0, logFile);
+        }
+        if (reportDirectory != null) {
+            Path report = reportDirectory.resolve(result.getScenario().getFeature().getPackageQualifiedName() + ".html");
+            if (Files.isRegularFile(report)) {
+                files.add(report);
+            }
+        }
+        return files;
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Summary of the attachment uploads of a run.
+     */
+    public static class AttachmentSummary {
+        private final int uploaded;
+        private final int duplicates;
+        private final int tooLarge;
+        private final int failed;
+        private final long bytes;
+
+        AttachmentSummary(int uploaded, int duplicates, int tooLarge, int failed, long bytes) {
+            this.uploaded = uploaded;
+            this.duplicates = duplicates;
+            this.tooLarge = tooLarge;
+            this.failed = failed;
+            this.bytes = bytes;
+        }
+
+        public int getUploaded() {
+            return uploaded;
+        }
+
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        public int getTooLarge() {
+            return tooLarge;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+}
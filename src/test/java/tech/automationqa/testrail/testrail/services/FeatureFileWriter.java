@@ -0,0 +1,208 @@
+package tech.automationqa.testrail.testrail.services;
+
+import com.intuit.karate.Logger;
+import tech.automationqa.testrail.testrail.model.TestCase;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code FeatureFileWriter} class turns the test cases of a suite into one feature file per section. Sections
+ * are formatted and written in parallel on a dedicated fork-join pool, and a file is only rewritten when its new
+ * content differs from the bytes on disk, so regenerating an unchanged suite leaves the working tree untouched.
+ */
+public class FeatureFileWriter {
+    private static final Logger LOGGER = new Logger();
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern NOT_FILE_NAME_CHARACTER = Pattern.compile("[^a-zA-Z0-9_]");
+    private static final Pattern REPEATED_UNDERSCORES = Pattern.compile("_+");
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Path outputDirectory;
+    private final int parallelism;
+
+    /**
+     * Constructs a {@code FeatureFileWriter}.
+     *
+     * @param outputDirectory The directory where the feature files are written; it is created if missing.
+     * @param parallelism     The number of sections formatted and written concurrently.
+     */
+    public FeatureFileWriter(Path outputDirectory, int parallelism) {
+        this.outputDirectory = outputDirectory;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Groups test cases by the name of their section, preserving the order in which TestRail returned them.
+     *
+     * @param testCases    The test cases of the suite.
+     * @param sectionNames The name of each section, keyed by section ID.
+     * @return The test cases of each section, keyed by section name.
+     */
+    public static Map<String, List<TestCase>> groupBySection(Iterable<TestCase> testCases, Map<Integer, String> sectionNames) {
+        Map<String, List<TestCase>> casesBySection = new LinkedHashMap<>();
+        for (TestCase testCase : testCases) {
+            String sectionName = sectionNames.get(testCase.getSectionId());
+            if (sectionName == null) {
+                LOGGER.warn("Section ID {} not found in sections map.", testCase.getSectionId());
+                continue; // Skip this test case if the section ID is not found
+            }
+            casesBySection.computeIfAbsent(sectionName, k -> new ArrayList<>()).add(testCase);
+        }
+        return casesBySection;
+    }
+
+    /**
+     * Writes a feature file for each section.
+     *
+     * @param casesBySection The test cases of each section, keyed by section name.
+     * @return How many files were written and skipped, and how long it took.
+     * @throws IOException If the output directory cannot be created or a feature file cannot be written.
+     */
+    public WriteSummary write(Map<String, List<TestCase>> casesBySection) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(outputDirectory);
+        Map<String, Map.Entry<String, List<TestCase>>> sectionsByFile = new LinkedHashMap<>();
+        casesBySection.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(section -> {
+            Map.Entry<String, List<TestCase>> previous = sectionsByFile.put(toFileName(section.getKey()), section);
+            if (previous != null) {
+                LOGGER.warn("Sections '{}' and '{}' map to the same feature file, only the latter is written.", previous.getKey(), section.getKey());
+            }
+        });
+
+        AtomicInteger written = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> sectionsByFile.entrySet().parallelStream().forEach(file -> {
+                Path featureFilePath = outputDirectory.resolve(file.getKey());
+                byte[] content = formatFeature(file.getValue().getKey(), file.getValue().getValue()).getBytes(StandardCharsets.UTF_8);
+                try {
+                    if (isUnchanged(featureFilePath, content)) {
+                        skipped.incrementAndGet();
+                    } else {
+                        Files.write(featureFilePath, content);
+                        written.incrementAndGet();
+                        LOGGER.debug("Feature file written: {}", featureFilePath);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing feature files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException("Failed to write feature files", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        WriteSummary summary = new WriteSummary(written.get(), skipped.get(), (System.nanoTime() - start) / 1_000_000);
+        LOGGER.info("Feature files in {}: {} written, {} unchanged ({} ms)", outputDirectory, summary.getWritten(), summary.getSkipped(), summary.getElapsedMillis());
+        return summary;
+    }
+
+    /**
+     * Names a feature file after its section, keeping only lower-case alphanumerics and single underscores.
+     *
+     * @param sectionName The name of the section.
+     * @return The file name, including the {@code .feature} extension.
+     */
+    static String toFileName(String sectionName) {
+        String name = WHITESPACE.matcher(sectionName.trim()).replaceAll("_");
+        name = NOT_FILE_NAME_CHARACTER.matcher(name).replaceAll("").toLowerCase();
+        return REPEATED_UNDERSCORES.matcher(name).replaceAll("_") + ".feature";
+    }
+
+    private static String formatFeature(String sectionName, List<TestCase> testCases) {
+        StringBuilder feature = new StringBuilder(256 * (testCases.size() + 1));
+        feature.append("Feature: ").append(sectionName).append(LINE_SEPARATOR);
+        for (TestCase testCase : testCases) {
+            formatScenario(feature, testCase);
+            feature.append('\n').append(LINE_SEPARATOR);
+        }
+        return feature.toString();
+    }
+
+    /**
+     * Appends a single scenario built from the given test case, with given, and, and then steps.
+     */
+    private static void formatScenario(StringBuilder feature, TestCase testCase) {
+        int start = feature.length();
+        feature.append("Scenario: ").append(testCase.getTitle()).append("\n");
+
+        List<TestCase.Step> stepsSeparated = testCase.getSteps();
+        if (!stepsSeparated.isEmpty()) {
+            for (int i = 0; i < stepsSeparated.size(); i++) {
+                TestCase.Step step = stepsSeparated.get(i);
+                String content = step.getContent() == null ? "No action provided." : step.getContent().replace('\n', ' ').trim();
+                String expected = step.getExpected() == null ? "" : step.getExpected().replace('\n', ' ').trim();
+
+                // Append Given/When/Then for each step
+                feature.append(i == 0 ? "Given " : "And ").append(content).append("\n");
+                if (!expected.isEmpty()) {
+                    feature.append("Then ").append(expected).append("\n");
+                }
+            }
+        } else {
+            feature.append("Given No steps defined.\n");
+        }
+
+        // Trim to remove any trailing newlines at the end of the scenario
+        int end = feature.length();
+        while (end > start && feature.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        feature.setLength(end);
+    }
+
+    private static boolean isUnchanged(Path featureFilePath, byte[] content) throws IOException {
+        if (!Files.exists(featureFilePath) || Files.size(featureFilePath) != content.length) {
+            return false;
+        }
+        return Arrays.equals(Files.readAllBytes(featureFilePath), content);
+    }
+
+    /**
+     * Summary of a feature file generation.
+     */
+    public static class WriteSummary {
+        private final int written;
+        private final int skipped;
+        private final long elapsedMillis;
+
+        WriteSummary(int written, int skipped, long elapsedMillis) {
+            this.written = written;
+            this.skipped = skipped;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getWritten() {
+            return written;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package tech.automationqa.testrail.testrail.services;
+
+/**
+ * A set of positive {@code int} values backed by an open-addressing table, so looking up a case ID neither boxes
+ * it nor chases a pointer. TestRail IDs start at 1, which leaves 0 free to mark empty slots.
+ */
+final class IntHashSet {
+    private static final int EMPTY = 0;
+
+    private int[] slots;
+    private int size;
+
+    IntHashSet(int expectedSize) {
+        slots = new int[tableSizeFor(expectedSize)];
+    }
+
+    /**
+     * @param value A positive value.
+     * @return true if the value was not in the set yet.
+     */
+    boolean add(int value) {
+        if (value <= EMPTY) {
+            throw new IllegalArgumentException("Only positive values can be stored: " + value);
+        }
+        if ((size + 1) * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        int mask = slots.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            if (slots[i] == value) {
+                return false;
+            }
+            if (slots[i] == EMPTY) {
+                slots[i] = value;
+                size++;
+                return true;
+            }
+        }
+    }
+
+    boolean contains(int value) {
+        if (value <= EMPTY) {
+            return false;
+        }
+        int mask = slots.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            if (slots[i] == value) {
+                return true;
+            }
+            if (slots[i] == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        int[] old = slots;
+        slots = new int[capacity];
+        size = 0;
+        for (int value : old) {
+            if (value != EMPTY) {
+                add(value);
+            }
+        }
+    }
+
+    private static int mix(int value) {
+        // Case IDs are mostly consecutive; spread them so neighbouring IDs do not probe into each other
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2 && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
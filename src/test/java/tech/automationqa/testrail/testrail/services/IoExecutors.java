@@ -0,0 +1,102 @@
+package tech.automationqa.testrail.testrail.services;
+
+import com.intuit.karate.Logger;
+import tech.automationqa.testrail.testrail.ConfigSnapshot;
+import tech.automationqa.testrail.testrail.TestrailProperty;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code IoExecutors} class creates the threads that carry TestRail's blocking HTTP calls. With
+ * {@code executor.mode: virtual} they are virtual threads, which park instead of holding an OS thread while a
+ * request is in flight; with {@code platform}, or on a JDK without virtual threads, they are ordinary daemon
+ * threads. The mode is read from the configuration of each service, and passed to every pool it creates. Virtual
+ * threads are looked up reflectively because the build still targets an older Java level.
+ */
+public final class IoExecutors {
+    private static final Logger LOGGER = new Logger();
+    private static final String VIRTUAL_MODE = "virtual";
+    // Looked up on first use, whether virtual threads exist depends only on the JDK
+    private static volatile Boolean virtualThreadsAvailable;
+
+    private IoExecutors() {
+    }
+
+    /**
+     * @param config The configuration of the service.
+     * @return true if the configuration asks for TestRail I/O to run on virtual threads and the JDK has them.
+     */
+    public static boolean isVirtual(ConfigSnapshot config) {
+        return VIRTUAL_MODE.equalsIgnoreCase(config.getString(TestrailProperty.EXECUTOR_MODE).orElse("platform")) && isVirtualAvailable();
+    }
+
+    /**
+     * Creates a pool that runs at most {@code threads} tasks at a time. The bound is kept with virtual threads as
+     * well, since it is what keeps the load on TestRail in check.
+     *
+     * @param name    The prefix of the thread names.
+     * @param threads The maximum number of tasks running at once.
+     * @param virtual Whether the tasks run on virtual threads, see {@link #isVirtual(ConfigSnapshot)}.
+     * @return The executor; it must be shut down by the caller.
+     */
+    public static ExecutorService newFixedPool(String name, int threads, boolean virtual) {
+        return Executors.newFixedThreadPool(threads, threadFactory(name, virtual));
+    }
+
+    /**
+     * Creates a single, unstarted thread.
+     *
+     * @param name    The name of the thread.
+     * @param task    The task the thread runs.
+     * @param virtual Whether the task runs on a virtual thread, see {@link #isVirtual(ConfigSnapshot)}.
+     * @return The thread; platform threads are daemons so they never keep the JVM alive.
+     */
+    public static Thread newThread(String name, Runnable task, boolean virtual) {
+        Thread thread = threadFactory(name, virtual).newThread(task);
+        thread.setName(name);
+        return thread;
+    }
+
+    private static ThreadFactory threadFactory(String name, boolean virtual) {
+        ThreadFactory factory = virtual && isVirtualAvailable() ? virtualThreadFactory(name) : null;
+        return factory != null ? factory : platformThreadFactory(name);
+    }
+
+    private static boolean isVirtualAvailable() {
+        if (virtualThreadsAvailable == null) {
+            virtualThreadsAvailable = virtualThreadFactory("testrail-io") != null;
+            if (virtualThreadsAvailable) {
+                LOGGER.info("TestRail I/O can run on virtual threads");
+            } else {
+                // Missing before Java 19 and behind --enable-preview on 19 and 20
+                LOGGER.warn("Virtual threads are not available on Java {}, using platform threads", System.getProperty("java.version"));
+            }
+        }
+        return virtualThreadsAvailable;
+    }
+
+    private static ThreadFactory platformThreadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static ThreadFactory virtualThreadFactory(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+            Method factory = builderType.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package tech.automationqa.testrail.testrail.services;
+
+import com.intuit.karate.core.Scenario;
+import com.intuit.karate.core.Tag;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The {@code PlanRunRouter} class decides which test run each scenario result belongs to when the same suite is
+ * executed against several TestRail configurations (browsers, regions, ...) inside one test plan. Every configured
+ * label owns one run of a single plan entry. A scenario is routed by its {@code @config=<label>} tag, or else by
+ * the active {@code environment} profile when that is one of the labels. Scenarios that cannot be routed are
+ * collected so they can be reported together once all results have been processed.
+ */
+public class PlanRunRouter {
+    /**
+     * Name of the scenario tag that pins a scenario to a configuration, as in {@code @config=chrome}.
+     */
+    public static final String CONFIG_TAG = "config";
+
+    private final Map<String, Integer> runsByLabel;
+    private final String defaultLabel;
+    private final boolean routeByTag;
+    private final Set<String> unroutedScenarios = new LinkedHashSet<>();
+
+    /**
+     * Constructs a {@code PlanRunRouter}.
+     *
+     * @param runsByLabel  The ID of the test run of each configuration label.
+     * @param defaultLabel The label used for scenarios without a configuration tag, or null if there is none.
+     */
+    public PlanRunRouter(Map<String, Integer> runsByLabel, String defaultLabel) {
+        this(runsByLabel, defaultLabel, true);
+    }
+
+    private PlanRunRouter(Map<String, Integer> runsByLabel, String defaultLabel, boolean routeByTag) {
+        this.runsByLabel = runsByLabel;
+        this.defaultLabel = defaultLabel != null && runsByLabel.containsKey(defaultLabel) ? defaultLabel : null;
+        this.routeByTag = routeByTag;
+    }
+
+    /**
+     * Creates a router that sends every scenario to the same run, whatever its configuration tag.
+     *
+     * @param runId The ID of the test run.
+     * @return A router with a single, default run.
+     */
+    public static PlanRunRouter singleRun(int runId) {
+        String label = String.valueOf(runId);
+        return new PlanRunRouter(Collections.singletonMap(label, runId), label, false);
+    }
+
+    /**
+     * @return The IDs of all the runs results can be routed to, in configuration order.
+     */
+    public List<Integer> getRunIds() {
+        return new ArrayList<>(runsByLabel.values());
+    }
+
+    /**
+     * Resolves the test run a scenario's result belongs to. Misses are recorded for {@link #getDiagnostics()}.
+     *
+     * @param scenario The executed scenario
+     * @return The ID of the run, or empty if the scenario does not name a known configuration and there is no default
+     */
+    public Optional<Integer> route(Scenario scenario) {
+        String label = routeByTag ? findConfigTag(scenario.getTagsEffective()).orElse(defaultLabel) : defaultLabel;
+        Integer runId = label == null ? null : runsByLabel.get(label);
+        if (runId == null) {
+            synchronized (unroutedScenarios) {
+                unroutedScenarios.add(scenario.getName() + (label == null ? "" : " (@" + CONFIG_TAG + "=" + label + ")"));
+            }
+            return Optional.empty();
+        }
+        return Optional.of(runId);
+    }
+
+    /**
+     * Finds the configuration label among the tags of the feature and the scenario. Feature tags come first, so the
+     * last label found wins and a tag on the scenario overrides the one on its feature.
+     */
+    private static Optional<String> findConfigTag(Iterable<Tag> tags) {
+        String label = null;
+        if (tags != null) {
+            for (Tag tag : tags) {
+                if (CONFIG_TAG.equals(tag.getName()) && !tag.getValues().isEmpty()) {
+                    label = tag.getValues().get(0);
+                }
+            }
+        }
+        return Optional.ofNullable(label);
+    }
+
+    /**
+     * @return A report of the scenarios that could not be routed to a run, or empty if every scenario was routed
+     */
+    public Optional<String> getDiagnostics() {
+        if (unroutedScenarios.isEmpty()) {
+            return Optional.empty();
+        }
+        StringBuilder report = new StringBuilder();
+        report.append(unroutedScenarios.size()).append(" scenario(s) could not be routed to a configuration ").append(runsByLabel.keySet()).append(':');
+        unroutedScenarios.forEach(name -> report.append(System.lineSeparator()).append("  - ").append(name));
+        return Optional.of(report.toString());
+    }
+
+    /**
+     * Parses the {@code test.plan.configurations} setting, a semicolon separated list of
+     * {@code label=configId[,configId...]} pairs such as {@code chrome=12;firefox=13,21}.
+     *
+     * @param spec The setting value.
+     * @return The configuration IDs of each label, in the order they were listed.
+     * @throws IllegalArgumentException If an entry is malformed, or two labels share a label or a configuration set.
+     */
+    public static Map<String, Set<Integer>> parseConfigurations(String spec) {
+        Map<String, Set<Integer>> configurations = new LinkedHashMap<>();
+        Set<Set<Integer>> seen = new HashSet<>();
+        for (String entry : spec.split(";")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.split("=", 2);
+            String label = parts[0].trim();
+            if (parts.length != 2 || label.isEmpty()) {
+                throw new IllegalArgumentException("Expected label=configId[,configId...] but got '" + entry.trim() + "'");
+            }
+            Set<Integer> configIds = new TreeSet<>();
+            for (String id : parts[1].split(",")) {
+                try {
+                    configIds.add(Integer.valueOf(id.trim()));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid configuration ID '" + id.trim() + "' for '" + label + "'", e);
+                }
+            }
+            if (configurations.put(label, configIds) != null) {
+                throw new IllegalArgumentException("Configuration label '" + label + "' is listed more than once");
+            }
+            if (!seen.add(configIds)) {
+                throw new IllegalArgumentException("Configuration IDs " + configIds + " of '" + label + "' are used by another label");
+            }
+        }
+        return configurations;
+    }
+
+    /**
+     * Builds an {@code add_plan_entry} request that creates one run per configuration in a single call.
+     *
+     * @param suiteId        The ID of the test suite.
+     * @param name           The name of the plan entry.
+     * @param configurations The configuration IDs of each label.
+     * @return The request body.
+     */
+    public static JSONObject buildPlanEntry(int suiteId, String name, Map<String, Set<Integer>> configurations) {
+        return buildPlanEntry(suiteId, name, configurations, true);
+    }
+
+    /**
+     * Builds an {@code add_plan_entry} request that creates one run per configuration in a single call.
+     *
+     * @param suiteId        The ID of the test suite.
+     * @param name           The name of the plan entry.
+     * @param configurations The configuration IDs of each label.
+     * @param includeAll     Whether the runs include every case of the suite, or start empty so only the executed
+     *                       cases can be added to them.
+     * @return The request body.
+     */
+    public static JSONObject buildPlanEntry(int suiteId, String name, Map<String, Set<Integer>> configurations, boolean includeAll) {
+        Set<Integer> allConfigIds = new TreeSet<>();
+        JSONArray runs = new JSONArray();
+        configurations.values().forEach(configIds -> {
+            allConfigIds.addAll(configIds);
+            JSONObject run = new JSONObject().put("include_all", includeAll).put("config_ids", new JSONArray(configIds));
+            runs.put(includeAll ? run : run.put("case_ids", new JSONArray()));
+        });
+        JSONObject entry = new JSONObject()
+                .put("suite_id", suiteId)
+                .put("name", name)
+                .put("include_all", includeAll)
+                .put("config_ids", new JSONArray(allConfigIds))
+                .put("runs", runs);
+        return includeAll ? entry : entry.put("case_ids", new JSONArray());
+    }
+
+    /**
+     * Matches the runs of one or more plan entries to the configuration labels through their configuration IDs.
+     * When several runs match a label, the most recently created one (highest ID) wins.
+     *
+     * @param entries        Plan entries, as returned by {@code add_plan_entry} or in the {@code entries} of
+     *                       {@code get_plan}.
+     * @param suiteId        Only entries of this suite are considered.
+     * @param configurations The configuration IDs of each label.
+     * @return The ID of the run of each label, in configuration order.
+     * @throws IllegalStateException If a label has no matching run.
+     */
+    public static Map<String, Integer> matchRuns(JSONArray entries, int suiteId, Map<String, Set<Integer>> configurations) {
+        Map<Set<Integer>, Integer> runsByConfigIds = new HashMap<>();
+        for (int e = 0; e < entries.length(); e++) {
+            JSONObject entry = entries.getJSONObject(e);
+            if (entry.optInt("suite_id") != suiteId) {
+                continue;
+            }
+            JSONArray runs = entry.getJSONArray("runs");
+            for (int r = 0; r < runs.length(); r++) {
+                JSONObject run = runs.getJSONObject(r);
+                Set<Integer> configIds = new TreeSet<>();
+                JSONArray ids = run.optJSONArray("config_ids");
+                for (int i = 0; ids != null && i < ids.length(); i++) {
+                    configIds.add(ids.getInt(i));
+                }
+                runsByConfigIds.merge(configIds, run.getInt("id"), Math::max);
+            }
+        }
+        Map<String, Integer> runsByLabel = new LinkedHashMap<>();
+        configurations.forEach((label, configIds) -> {
+            Integer runId = runsByConfigIds.get(configIds);
+            if (runId == null) {
+                throw new IllegalStateException("No run of suite " + suiteId + " with configurations " + configIds + " for '" + label + "'");
+            }
+            runsByLabel.put(label, runId);
+        });
+        return runsByLabel;
+    }
+}
@@ -1,21 +1,54 @@
 package tech.automationqa.testrail.testrail.services;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.intuit.karate.Logger;
 import net.masterthought.cucumber.Configuration;
 import net.masterthought.cucumber.ReportBuilder;
 import org.apache.commons.io.FileUtils;
+import tech.automationqa.testrail.testrail.ConfigSnapshot;
+import tech.automationqa.testrail.testrail.TestrailProperty;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 
 /**
  * The {@code ReportGenerator} class is responsible for generating reports from JSON files
  * that contain test results. It utilizes the Masterthought Cucumber Reporting library to create
  * detailed reports in HTML format.
+ * <p>
+ * The report can be generated on a background thread while the results are published. Once the JSON files
+ * exceed the lean threshold, they are first streamed, in parallel, into lean copies in which long doc strings
+ * (Karate's request and response logs) and large embedded files are cut down, since the reporting library holds
+ * every parsed file in memory at once. A lean copy is only rewritten when its source is newer.
  */
 public class ReportGenerator {
+    private static final Logger LOGGER = new Logger();
+    private static final String LEAN_DIRECTORY = "cucumber-lean";
+
     private final String reportOutputDirectory;
+    private final long leanThresholdBytes;
+    private final int leanTextMaxChars;
+    private final JsonFactory jsonFactory = new JsonFactory();
 
     /**
      * Constructs a {@code ReportGenerator} with the specified report output directory.
@@ -23,8 +56,19 @@ public class ReportGenerator {
      * @param reportOutputDirectory The directory path where the generated reports will be saved.
      */
     public ReportGenerator(String reportOutputDirectory) {
-        this.reportOutputDirectory = reportOutputDirectory;
+        this(reportOutputDirectory, tech.automationqa.testrail.testrail.Configuration.snapshot());
+    }
 
+    /**
+     * Constructs a {@code ReportGenerator} with the specified report output directory and configuration.
+     *
+     * @param reportOutputDirectory The directory path where the generated reports will be saved.
+     * @param config                The configuration holding the lean report settings.
+     */
+    public ReportGenerator(String reportOutputDirectory, ConfigSnapshot config) {
+        this.reportOutputDirectory = reportOutputDirectory;
+        this.leanThresholdBytes = config.getInteger(TestrailProperty.REPORT_LEAN_THRESHOLD).orElse(0) * 1024L * 1024L;
+        this.leanTextMaxChars = config.getInteger(TestrailProperty.REPORT_LEAN_TEXT_MAX).orElse(16) * 1024;
     }
 
     /**
@@ -33,15 +77,173 @@ public class ReportGenerator {
      * directory specified at the construction time.
      *
      * @param karateOutputPath The path to the directory containing the JSON files with test results.
+     * @return How many files went into the report, how long it took and the heap it needed.
      */
-    public void generateReport(String karateOutputPath) {
-        List<String> jsonPaths = FileUtils.listFiles(new File(karateOutputPath), new String[]{"json"}, true)
+    public ReportSummary generateReport(String karateOutputPath) {
+        long start = System.nanoTime();
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .collect(Collectors.toList());
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        List<File> jsonFiles = FileUtils.listFiles(new File(karateOutputPath), new String[]{"json"}, true)
                 .stream()
-                .map(File::getAbsolutePath)
+                .sorted()
                 .collect(Collectors.toList());
+        long inputBytes = jsonFiles.stream().mapToLong(File::length).sum();
+        boolean lean = leanThresholdBytes > 0 && inputBytes > leanThresholdBytes;
+        List<String> jsonPaths = lean
+                ? writeLeanCopies(Paths.get(karateOutputPath), jsonFiles)
+                : jsonFiles.stream().map(File::getAbsolutePath).collect(Collectors.toList());
 
         net.masterthought.cucumber.Configuration config = new Configuration(new File(reportOutputDirectory), "regression");
         new ReportBuilder(jsonPaths, config).generateReports();
+
+        // Upper bound of the peak: each pool peaks at its own moment, and other threads share the heap
+        long peakHeapBytes = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        ReportSummary summary = new ReportSummary(jsonFiles.size(), inputBytes, lean, (System.nanoTime() - start) / 1_000_000, peakHeapBytes);
+        LOGGER.info("Report generated from {} JSON files ({} MB{}) in {} ms, heap peak {} MB", summary.getFiles(), summary.getInputBytes() >> 20,
+                lean ? ", lean copies" : "", summary.getElapsedMillis(), summary.getPeakHeapBytes() >> 20);
+        return summary;
+    }
+
+    /**
+     * Generates the report on a background thread, so it can run while the results are published.
+     *
+     * @param karateOutputPath The path to the directory containing the JSON files with test results.
+     * @return A future completed once the report has been written, or exceptionally if it failed.
+     */
+    public CompletableFuture<ReportSummary> generateReportAsync(String karateOutputPath) {
+        CompletableFuture<ReportSummary> report = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                report.complete(generateReport(karateOutputPath));
+            } catch (Throwable e) {
+                report.completeExceptionally(e);
+            }
+        }, "report-generator");
+        thread.setDaemon(true);
+        thread.start();
+        return report;
+    }
+
+    /**
+     * Streams every JSON file into a lean copy next to the report, in parallel, skipping the copies that are newer
+     * than their source.
+     *
+     * @return The paths of the lean copies, in the order of their sources.
+     */
+    private List<String> writeLeanCopies(Path sourceDirectory, List<File> jsonFiles) {
+        Path leanDirectory = Paths.get(reportOutputDirectory, LEAN_DIRECTORY);
+        List<Path> copies = jsonFiles.stream()
+                .map(file -> leanDirectory.resolve(sourceDirectory.toAbsolutePath().relativize(file.toPath().toAbsolutePath())))
+                .collect(Collectors.toList());
+        AtomicInteger written = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            pool.submit(() -> IntStream.range(0, jsonFiles.size()).parallel().forEach(i -> {
+                Path source = jsonFiles.get(i).toPath();
+                Path copy = copies.get(i);
+                try {
+                    if (Files.exists(copy) && Files.getLastModifiedTime(copy).compareTo(Files.getLastModifiedTime(source)) >= 0) {
+                        return;
+                    }
+                    Files.createDirectories(copy.getParent());
+                    writeLeanCopy(source, copy);
+                    written.incrementAndGet();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing the lean report files", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to write the lean report files", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        LOGGER.info("Lean report files in {}: {} written, {} unchanged", leanDirectory, written.get(), jsonFiles.size() - written.get());
+        return copies.stream().map(path -> path.toAbsolutePath().toString()).collect(Collectors.toList());
+    }
+
+    /**
+     * Copies a Cucumber JSON file token by token, cutting doc strings down to the text limit and emptying the data
+     * of embedded files that exceed it. Only one token is held in memory at a time.
+     */
+    private void writeLeanCopy(Path source, Path target) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(source.toFile());
+             JsonGenerator generator = jsonFactory.createGenerator(target.toFile(), JsonEncoding.UTF8)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.VALUE_STRING && parser.getTextLength() > leanTextMaxChars) {
+                    JsonStreamContext context = parser.getParsingContext();
+                    if (isDocString(context)) {
+                        String text = parser.getText();
+                        generator.writeString(text.substring(0, leanTextMaxChars) + "\n... [" + (text.length() - leanTextMaxChars) + " characters cut from the report]");
+                        continue;
+                    }
+                    if (isEmbeddingData(context)) {
+                        generator.writeString("");
+                        continue;
+                    }
+                }
+                generator.copyCurrentEvent(parser);
+            }
+        }
+    }
+
+    private static boolean isDocString(JsonStreamContext context) {
+        return "value".equals(context.getCurrentName()) && context.getParent() != null && "doc_string".equals(context.getParent().getCurrentName());
+    }
+
+    private static boolean isEmbeddingData(JsonStreamContext context) {
+        JsonStreamContext array = context.getParent();
+        return "data".equals(context.getCurrentName()) && array != null && array.getParent() != null && "embeddings".equals(array.getParent().getCurrentName());
     }
-}
 
+    /**
+     * Summary of a report generation.
+     */
+    public static class ReportSummary {
+        private final int files;
+        private final long inputBytes;
+        private final boolean lean;
+        private final long elapsedMillis;
+        private final long peakHeapBytes;
+
+        ReportSummary(int files, long inputBytes, boolean lean, long elapsedMillis, long peakHeapBytes) {
+            this.files = files;
+            this.inputBytes = inputBytes;
+            this.lean = lean;
+            this.elapsedMillis = elapsedMillis;
+            this.peakHeapBytes = peakHeapBytes;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        public long getInputBytes() {
+            return inputBytes;
+        }
+
+        /**
+         * @return true if the report was generated from lean copies of the JSON files.
+         */
+        public boolean isLean() {
+            return lean;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * @return The highest heap use of the JVM while the report was generated, summed over the heap pools.
+         */
+        public long getPeakHeapBytes() {
+            return peakHeapBytes;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package tech.automationqa.testrail.testrail.services;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.intuit.karate.Logger;
+import com.intuit.karate.core.Feature;
+import com.intuit.karate.core.Result;
+import com.intuit.karate.core.Scenario;
+import com.intuit.karate.core.ScenarioResult;
+import com.intuit.karate.core.Step;
+import com.intuit.karate.core.StepResult;
+import com.intuit.karate.core.Tag;
+import com.intuit.karate.resource.MemoryResource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The {@code ReportResultReader} turns the JSON reports of an earlier Karate run back into scenario results, so they
+ * can be published without running the tests again. It reads Karate's own {@code *.karate-json.txt} files when the
+ * directory has any, and otherwise the Cucumber {@code *.json} files, like {@link ReportGenerator}.
+ * <p>
+ * The files are parsed in parallel with a streaming reader, one scenario at a time, and every scenario is handed to
+ * the consumer as soon as it has been read, so memory does not grow with the size of the report. Step logs and
+ * embedded files, which make up most of a report, are skipped without being read into memory; in Karate's
+ * Cucumber JSON the {@code doc_string} of a step holds its log, so it is skipped as well.
+ */
+public class ReportResultReader {
+    private static final Logger LOGGER = new Logger();
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String KARATE_JSON_SUFFIX = ".karate-json.txt";
+    private static final String CUCUMBER_JSON_SUFFIX = ".json";
+    private static final Set<String> SKIPPED_FIELDS = Set.of("stepLog", "embeds", "callResults", "doc_string", "embeddings", "output", "match");
+
+    private final Path reportDirectory;
+    private final int threads;
+    private final boolean virtualThreads;
+
+    /**
+     * Constructs a {@code ReportResultReader}.
+     *
+     * @param reportDirectory The directory holding the JSON reports, searched recursively.
+     * @param threads         The number of files parsed at the same time.
+     * @param virtualThreads  Whether the files are parsed on virtual threads, see {@link IoExecutors}.
+     */
+    public ReportResultReader(Path reportDirectory, int threads, boolean virtualThreads) {
+        this.reportDirectory = reportDirectory;
+        this.threads = threads;
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Reads every scenario of the report and hands it to the consumer. The consumer is called from several threads
+     * at once and may block to slow the reading down. A file that cannot be read is reported and skipped.
+     *
+     * @param consumer Receives each scenario result.
+     * @return How many files and scenarios were read, and which files failed.
+     */
+    public ReadSummary read(Consumer<ScenarioResult> consumer) {
+        List<Path> files = findReports();
+        AtomicInteger scenarios = new AtomicInteger();
+        List<Path> failedFiles = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = IoExecutors.newFixedPool("report-reader", Math.min(threads, Math.max(files.size(), 1)), virtualThreads);
+        try {
+            List<CompletableFuture<Void>> reads = new ArrayList<>(files.size());
+            for (Path file : files) {
+                reads.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        scenarios.addAndGet(readFile(file, consumer));
+                    } catch (IOException | RuntimeException e) {
+                        LOGGER.error("Failed to read the results in {}: {}", file, e.getMessage());
+                        failedFiles.add(file);
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+        LOGGER.info("Read {} scenarios from {} report files in {}, {} files failed", scenarios.get(), files.size(), reportDirectory, failedFiles.size());
+        return new ReadSummary(files.size(), scenarios.get(), failedFiles);
+    }
+
+    private List<Path> findReports() {
+        try (Stream<Path> paths = Files.walk(reportDirectory)) {
+            List<Path> files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            List<Path> karateReports = files.stream().filter(file -> file.getFileName().toString().endsWith(KARATE_JSON_SUFFIX)).collect(Collectors.toList());
+            if (!karateReports.isEmpty()) {
+                return karateReports;
+            }
+            return files.stream().filter(file -> file.getFileName().toString().endsWith(CUCUMBER_JSON_SUFFIX)).collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list the reports in " + reportDirectory, e);
+        }
+    }
+
+    private int readFile(Path file, Consumer<ScenarioResult> consumer) throws IOException {
+        boolean karateJson = file.getFileName().toString().endsWith(KARATE_JSON_SUFFIX);
+        Feature feature = placeholderFeature(file);
+        try (JsonParser parser = JSON_FACTORY.createParser(file.toFile())) {
+            JsonToken root = parser.nextToken();
+            if (karateJson && root == JsonToken.START_OBJECT) {
+                return readKarateFeature(parser, feature, consumer);
+            }
+            if (!karateJson && root == JsonToken.START_ARRAY) {
+                int count = 0;
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    count += readCucumberFeature(parser, feature, consumer);
+                }
+                return count;
+            }
+            throw new IOException("Unexpected content, not a " + (karateJson ? "Karate" : "Cucumber") + " JSON report");
+        }
+    }
+
+    /**
+     * Reads the {@code scenarioResults} of a Karate JSON feature, one scenario at a time.
+     */
+    private int readKarateFeature(JsonParser parser, Feature feature, Consumer<ScenarioResult> consumer) throws IOException {
+        int count = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("scenarioResults".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    consumer.accept(toKarateScenarioResult(feature, readObject(parser)));
+                    count++;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads the {@code elements} of a Cucumber JSON feature, one scenario at a time. The steps of a background
+     * element are added to the scenario that follows it, as Karate does.
+     */
+    private int readCucumberFeature(JsonParser parser, Feature feature, Consumer<ScenarioResult> consumer) throws IOException {
+        int count = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("elements".equals(field) && value == JsonToken.START_ARRAY) {
+                List<Object> background = Collections.emptyList();
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    Map<String, Object> element = readObject(parser);
+                    if ("background".equals(element.get("type"))) {
+                        background = list(element.get("steps"));
+                        continue;
+                    }
+                    consumer.accept(toCucumberScenarioResult(feature, element, background));
+                    background = Collections.emptyList();
+                    count++;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ScenarioResult toKarateScenarioResult(Feature feature, Map<String, Object> json) {
+        Scenario scenario = newScenario(feature, json, number(json.get("exampleIndex"), -1));
+        List<Tag> tags = new ArrayList<>();
+        for (Object tag : list(json.get("tags"))) {
+            tags.add(new Tag(scenario.getLine(), "@" + tag));
+        }
+        scenario.setTags(tags);
+        if (json.get("exampleData") instanceof Map) {
+            scenario.setExampleData((Map<String, Object>) json.get("exampleData"));
+        }
+        ScenarioResult result = new ScenarioResult(scenario);
+        for (Object stepResult : list(json.get("stepResults"))) {
+            Map<String, Object> stepJson = (Map<String, Object>) stepResult;
+            Step step = Step.fromKarateJson(scenario, (Map<String, Object>) stepJson.get("step"));
+            result.addStepResult(new StepResult(step, Result.fromKarateJson((Map<String, Object>) stepJson.get("result"))));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ScenarioResult toCucumberScenarioResult(Feature feature, Map<String, Object> json, List<Object> background) {
+        Scenario scenario = newScenario(feature, json, -1);
+        List<Tag> tags = new ArrayList<>();
+        for (Object tag : list(json.get("tags"))) {
+            tags.add(new Tag(number(((Map<String, Object>) tag).get("line"), scenario.getLine()), String.valueOf(((Map<String, Object>) tag).get("name"))));
+        }
+        scenario.setTags(tags);
+        ScenarioResult result = new ScenarioResult(scenario);
+        List<Object> steps = new ArrayList<>(background);
+        steps.addAll(list(json.get("steps")));
+        for (int i = 0; i < steps.size(); i++) {
+            Map<String, Object> stepJson = (Map<String, Object>) steps.get(i);
+            Step step = new Step(scenario, i);
+            step.setPrefix(String.valueOf(stepJson.getOrDefault("keyword", "*")).trim());
+            step.setText(String.valueOf(stepJson.getOrDefault("name", "")));
+            step.setLine(number(stepJson.get("line"), 0));
+            Map<String, Object> resultJson = (Map<String, Object>) stepJson.getOrDefault("result", Collections.emptyMap());
+            // Same fields as Karate's own result JSON, so the result is rebuilt the same way
+            Map<String, Object> karateResult = new LinkedHashMap<>();
+            karateResult.put("status", resultJson.getOrDefault("status", "skipped"));
+            karateResult.put("nanos", ((Number) resultJson.getOrDefault("duration", 0)).longValue());
+            if (resultJson.containsKey("error_message")) {
+                karateResult.put("errorMessage", resultJson.get("error_message"));
+            }
+            result.addStepResult(new StepResult(step, Result.fromKarateJson(karateResult)));
+        }
+        return result;
+    }
+
+    private static Scenario newScenario(Feature feature, Map<String, Object> json, int exampleIndex) {
+        Scenario scenario = new Scenario(feature, feature.getSection(0), exampleIndex);
+        scenario.setName(String.valueOf(json.getOrDefault("name", "")));
+        scenario.setDescription(String.valueOf(json.getOrDefault("description", "")));
+        scenario.setLine(number(json.get("line"), 0));
+        return scenario;
+    }
+
+    /**
+     * The scenarios of a report are attached to a feature that only carries the report's name, since the feature
+     * files of the run may no longer exist.
+     */
+    private static Feature placeholderFeature(Path file) {
+        String name = file.getFileName().toString();
+        return Feature.read(new MemoryResource(file.toFile(), "Feature: " + name + "\n\nScenario: placeholder\n* print 'placeholder'\n"));
+    }
+
+    /**
+     * Reads the object the parser is at into maps, lists and values, leaving out the logs and embedded files.
+     */
+    private static Map<String, Object> readObject(JsonParser parser) throws IOException {
+        Map<String, Object> object = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (SKIPPED_FIELDS.contains(field)) {
+                parser.skipChildren();
+            } else {
+                object.put(field, readValue(parser, token));
+            }
+        }
+        return object;
+    }
+
+    private static Object readValue(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                return readObject(parser);
+            case START_ARRAY:
+                List<Object> array = new ArrayList<>();
+                JsonToken element;
+                while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    array.add(readValue(parser, element));
+                }
+                return array;
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> list(Object value) {
+        return value instanceof List ? (List<Object>) value : Collections.emptyList();
+    }
+
+    private static int number(Object value, int defaultValue) {
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+
+    /**
+     * Summary of a report that was read.
+     */
+    public static class ReadSummary {
+        private final int files;
+        private final int scenarios;
+        private final List<Path> failedFiles;
+
+        ReadSummary(int files, int scenarios, List<Path> failedFiles) {
+            this.files = files;
+            this.scenarios = scenarios;
+            this.failedFiles = failedFiles;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        public int getScenarios() {
+            return scenarios;
+        }
+
+        /**
+         * @return The report files that could not be read, whose scenarios were partly or not at all published.
+         */
+        public List<Path> getFailedFiles() {
+            return failedFiles;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package tech.automationqa.testrail.testrail.services;
+
+import com.intuit.karate.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import tech.automationqa.testrail.testrail.apiClient.APIService;
+import tech.automationqa.testrail.testrail.apiClient.PagedResults;
+import tech.automationqa.testrail.testrail.model.RunTest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code ResultDeltaFilter} class drops the results of an existing run that would not change anything in
+ * TestRail, so re-publishing a run only uploads the cases whose outcome differs from the last upload.
+ * <p>
+ * In {@link Mode#SERVER} mode the current status of every test is fetched once per run with {@code get_tests} and a
+ * result is dropped when its status is the same; a changed comment alone is not detected, since TestRail does not
+ * return it with the tests. In {@link Mode#LOCAL} mode a 64-bit fingerprint of the status and comment of each
+ * uploaded result is kept in a file per run, and a result is dropped when its fingerprint has not changed. The
+ * elapsed time is left out of the fingerprint because it differs on every run.
+ */
+public class ResultDeltaFilter {
+    private static final Logger LOGGER = new Logger();
+    private static final String CASE_ID = "case_id";
+    private static final String STATUS_ID = "status_id";
+    private static final String COMMENT = "comment";
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Where the previous outcome of each case is taken from.
+     */
+    public enum Mode {
+        OFF, SERVER, LOCAL
+    }
+
+    private final APIService api;
+    private final Mode mode;
+    private final Path directory;
+
+    /**
+     * Constructs a {@code ResultDeltaFilter}.
+     *
+     * @param api       The API service used to fetch the tests of a run in {@link Mode#SERVER} mode.
+     * @param mode      Where the previous outcome of each case is taken from.
+     * @param directory The directory holding the fingerprint files in {@link Mode#LOCAL} mode.
+     */
+    public ResultDeltaFilter(APIService api, Mode mode, Path directory) {
+        this.api = api;
+        this.mode = mode;
+        this.directory = directory;
+    }
+
+    /**
+     * Removes the results whose outcome is the same as the last one known for their case.
+     *
+     * @param runId   The ID of the test run the results belong to.
+     * @param results The results about to be uploaded.
+     * @return The results that changed, in their original order.
+     */
+    public JSONArray filter(int runId, JSONArray results) {
+        if (mode == Mode.OFF || results.length() == 0) {
+            return results;
+        }
+        Map<Integer, Long> previous;
+        try {
+            previous = mode == Mode.SERVER ? fetchStatuses(runId) : readFingerprints(runId);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to read the previous results of Test Run {}, uploading all of them: {}", runId, e.getMessage());
+            return results;
+        }
+        JSONArray changed = new JSONArray();
+        for (int i = 0; i < results.length(); i++) {
+            JSONObject result = results.getJSONObject(i);
+            Long last = previous.get(result.getInt(CASE_ID));
+            if (last == null || last != fingerprint(result)) {
+                changed.put(result);
+            }
+        }
+        LOGGER.info("Skipping {} of {} results unchanged in Test Run {}", results.length() - changed.length(), results.length(), runId);
+        return changed;
+    }
+
+    /**
+     * Records the outcome of results that TestRail accepted, so the next upload to the run can skip them. Only
+     * used in {@link Mode#LOCAL} mode; the fingerprint file is replaced atomically.
+     *
+     * @param runId    The ID of the test run the results belong to.
+     * @param uploaded The results that were uploaded.
+     */
+    public void commit(int runId, JSONArray uploaded) {
+        if (mode != Mode.LOCAL || uploaded.length() == 0) {
+            return;
+        }
+        Path temporary = null;
+        try {
+            Map<Integer, Long> fingerprints = readFingerprints(runId);
+            for (int i = 0; i < uploaded.length(); i++) {
+                JSONObject result = uploaded.getJSONObject(i);
+                fingerprints.put(result.getInt(CASE_ID), fingerprint(result));
+            }
+            Files.createDirectories(directory);
+            Path file = fingerprintFile(runId);
+            temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                for (Map.Entry<Integer, Long> entry : fingerprints.entrySet()) {
+                    writer.write(entry.getKey() + "\t" + Long.toHexString(entry.getValue()));
+                    writer.newLine();
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temporary = null;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to record the uploaded results of Test Run {}, they will be uploaded again: {}", runId, e.getMessage());
+        } finally {
+            // A write that failed halfway must not leave its temporary file behind in the delta directory
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to delete {}: {}", temporary, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The mode of this filter.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    private long fingerprint(JSONObject result) {
+        int statusId = result.getInt(STATUS_ID);
+        if (mode == Mode.SERVER) {
+            return statusId;
+        }
+        return fingerprint(statusId, result.optString(COMMENT, ""));
+    }
+
+    /**
+     * FNV-1a over the status and the comment's characters: cheap, allocation-free and wide enough that two
+     * different outcomes of the same case practically never collide.
+     */
+    static long fingerprint(int statusId, String comment) {
+        long hash = (FNV_OFFSET ^ statusId) * FNV_PRIME;
+        for (int i = 0; i < comment.length(); i++) {
+            hash = (hash ^ comment.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private Map<Integer, Long> fetchStatuses(int runId) {
+        Map<Integer, Long> statuses = new HashMap<>();
+        try (PagedResults<RunTest> tests = api.streamTests(runId)) {
+            for (RunTest test : tests) {
+                if (test.getStatusId() != 0) {
+                    statuses.put(test.getCaseId(), (long) test.getStatusId());
+                }
+            }
+        }
+        return statuses;
+    }
+
+    private Map<Integer, Long> readFingerprints(int runId) throws IOException {
+        Map<Integer, Long> fingerprints = new HashMap<>();
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(fingerprintFile(runId), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return fingerprints;
+        }
+        for (String line : lines) {
+            int tab = line.indexOf('\t');
+            if (tab > 0) {
+                fingerprints.put(Integer.valueOf(line.substring(0, tab)), Long.parseUnsignedLong(line.substring(tab + 1), 16));
+            }
+        }
+        return fingerprints;
+    }
+
+    private Path fingerprintFile(int runId) {
+        return directory.resolve("run-" + runId + ".tsv");
+    }
+}
@@ -0,0 +1,256 @@
+package tech.automationqa.testrail.testrail.services;
+
+import com.intuit.karate.Logger;
+import org.json.JSONArray;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code ResultOutbox} class is an append-only journal of the result batches sent to TestRail, so results
+ * survive a TestRail outage. Every batch is appended and forced to disk before it is sent, and an acknowledgement
+ * is appended once TestRail has accepted it, or once it has been rejected for good. Batches left without an
+ * acknowledgement are returned by {@link #pending()} in the order they were written, so they can be replayed later.
+ * <p>
+ * Each record is a single line: {@code B <id> <runId> <crc32> <json>} for a batch, {@code A <id>} for an accepted
+ * batch and {@code R <id>} for a rejected one. The batch ID is derived from the run and the content, so a batch
+ * written twice is replayed once. A torn or corrupted last line, as left by a crash, is ignored.
+ */
+public class ResultOutbox implements Closeable {
+    private static final Logger LOGGER = new Logger();
+    private static final char BATCH = 'B';
+    private static final char ACCEPTED = 'A';
+    private static final char REJECTED = 'R';
+    private static final char SEPARATOR = '\t';
+
+    private final Path journal;
+    private final FileChannel channel;
+
+    /**
+     * Opens the journal for appending, creating it and its directory if needed.
+     *
+     * @param journal The path of the journal file.
+     * @throws IOException If the journal cannot be created or opened.
+     */
+    public ResultOutbox(Path journal) throws IOException {
+        this.journal = journal;
+        Path directory = journal.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        this.channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        terminateTornRecord();
+    }
+
+    /**
+     * Ends a last line left incomplete by a crash, so the next record does not get appended to it.
+     */
+    private void terminateTornRecord() throws IOException {
+        try (FileLock ignored = channel.lock(); FileChannel reader = FileChannel.open(journal, StandardOpenOption.READ)) {
+            long size = reader.size();
+            ByteBuffer last = ByteBuffer.allocate(1);
+            if (size > 0 && reader.read(last, size - 1) == 1 && last.get(0) != '\n') {
+                channel.write(ByteBuffer.wrap(new byte[]{'\n'}));
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * @return The path of the journal file.
+     */
+    public Path getJournal() {
+        return journal;
+    }
+
+    /**
+     * Appends a batch to the journal and forces it to disk.
+     *
+     * @param runId The ID of the test run the results belong to.
+     * @param batch The results about to be sent.
+     * @return The ID used to acknowledge the batch.
+     * @throws IOException If the journal cannot be written.
+     */
+    public String append(int runId, JSONArray batch) throws IOException {
+        String payload = batch.toString();
+        String id = batchId(runId, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload.getBytes(StandardCharsets.UTF_8));
+        write(new StringBuilder(payload.length() + 64).append(BATCH).append(SEPARATOR).append(id).append(SEPARATOR)
+                .append(runId).append(SEPARATOR).append(Long.toHexString(crc.getValue())).append(SEPARATOR)
+                .append(payload).append('\n').toString());
+        return id;
+    }
+
+    /**
+     * Records that TestRail accepted a batch, so it is not replayed.
+     *
+     * @param id The ID returned by {@link #append(int, JSONArray)}.
+     * @throws IOException If the journal cannot be written.
+     */
+    public void accept(String id) throws IOException {
+        write(String.valueOf(ACCEPTED) + SEPARATOR + id + '\n');
+    }
+
+    /**
+     * Records that TestRail rejected a batch in a way that sending it again cannot fix, so it is not replayed.
+     *
+     * @param id The ID returned by {@link #append(int, JSONArray)}.
+     * @throws IOException If the journal cannot be written.
+     */
+    public void reject(String id) throws IOException {
+        write(String.valueOf(REJECTED) + SEPARATOR + id + '\n');
+    }
+
+    /**
+     * Reads the batches that have neither been accepted nor rejected, oldest first. A batch appended several times
+     * while pending is returned once, at its first position.
+     *
+     * @return The pending batches.
+     * @throws IOException If the journal cannot be read.
+     */
+    public synchronized List<PendingBatch> pending() throws IOException {
+        Map<String, PendingBatch> pending = new LinkedHashMap<>();
+        int lineNumber = 0;
+        int corrupted = 0;
+        try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.length() < 3 || line.charAt(1) != SEPARATOR) {
+                    corrupted++;
+                    continue;
+                }
+                char type = line.charAt(0);
+                if (type == ACCEPTED || type == REJECTED) {
+                    pending.remove(line.substring(2));
+                } else if (type == BATCH) {
+                    PendingBatch batch = parseBatch(line);
+                    if (batch == null) {
+                        corrupted++;
+                    } else {
+                        pending.putIfAbsent(batch.getId(), batch);
+                    }
+                } else {
+                    corrupted++;
+                }
+            }
+        }
+        if (corrupted > 0) {
+            LOGGER.warn("Ignored {} corrupted record(s) out of {} in {}", corrupted, lineNumber, journal);
+        }
+        return new ArrayList<>(pending.values());
+    }
+
+    /**
+     * Empties the journal if every batch in it has been accepted or rejected, so it does not grow forever.
+     *
+     * @return true if the journal was emptied.
+     * @throws IOException If the journal cannot be read or truncated.
+     */
+    public synchronized boolean compact() throws IOException {
+        try (FileLock ignored = channel.lock()) {
+            if (!pending().isEmpty()) {
+                return false;
+            }
+            channel.truncate(0);
+            channel.force(true);
+            return true;
+        }
+    }
+
+    /**
+     * Closes the journal.
+     *
+     * @throws IOException If the journal cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private synchronized void write(String record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+        // The lock keeps records of other processes sharing the journal from interleaving with this one
+        try (FileLock ignored = channel.lock()) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    private static PendingBatch parseBatch(String line) {
+        String[] fields = line.split(String.valueOf(SEPARATOR), 5);
+        if (fields.length != 5) {
+            return null;
+        }
+        try {
+            CRC32 crc = new CRC32();
+            crc.update(fields[4].getBytes(StandardCharsets.UTF_8));
+            if (crc.getValue() != Long.parseLong(fields[3], 16)) {
+                return null;
+            }
+            return new PendingBatch(fields[1], Integer.parseInt(fields[2]), new JSONArray(fields[4]));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String batchId(int runId, String payload) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(Integer.toString(runId).getBytes(StandardCharsets.UTF_8));
+            byte[] hash = digest.digest(payload.getBytes(StandardCharsets.UTF_8));
+            StringBuilder id = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                id.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+            }
+            return id.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * A batch read back from the journal that has not been acknowledged yet.
+     */
+    public static class PendingBatch {
+        private final String id;
+        private final int runId;
+        private final JSONArray results;
+
+        PendingBatch(String id, int runId, JSONArray results) {
+            this.id = id;
+            this.runId = runId;
+            this.results = results;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public int getRunId() {
+            return runId;
+        }
+
+        public JSONArray getResults() {
+            return results;
+        }
+    }
+}
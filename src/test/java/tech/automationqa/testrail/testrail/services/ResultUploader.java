@@ -0,0 +1,374 @@
+package tech.automationqa.testrail.testrail.services;
+
+import com.intuit.karate.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import tech.automationqa.testrail.testrail.apiClient.APIException;
+import tech.automationqa.testrail.testrail.apiClient.APIService;
+import tech.automationqa.testrail.testrail.apiClient.ClientStats;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * The {@code ResultUploader} class splits a run's results into fixed-size chunks and posts them to TestRail
+ * concurrently through a bounded worker pool. A failing request only affects the results it carries instead of the
+ * whole run. Chunks are not re-sent here: {@code add_results_for_cases} is not idempotent, so only the
+ * {@link tech.automationqa.testrail.testrail.apiClient.APIClient} retries it, and only when TestRail did not
+ * process it. When a {@link ResultOutbox} is given, every chunk is journaled before it is sent, and chunks that
+ * could not be delivered can be sent again with {@link #replay()}.
+ */
+public class ResultUploader {
+    private static final Logger LOGGER = new Logger();
+    private static final String RESULTS_KEY = "results";
+
+    private final APIService api;
+    private final int batchSize;
+    private final int threads;
+    private final ResultOutbox outbox;
+    private final boolean virtualThreads;
+    private volatile ResultListener listener;
+    private volatile RunCaseSelection caseSelection;
+
+    /**
+     * Receives the results TestRail created for each uploaded chunk.
+     */
+    @FunctionalInterface
+    public interface ResultListener {
+        /**
+         * @param runId   The ID of the test run the chunk was sent to.
+         * @param chunk   The results that were sent.
+         * @param created The results TestRail created, in the same order, each with its {@code id}.
+         */
+        void onResultsCreated(int runId, JSONArray chunk, JSONArray created);
+    }
+
+    /**
+     * Constructs a {@code ResultUploader}.
+     *
+     * @param api       The API service used to post the results.
+     * @param batchSize The maximum number of results sent in one request.
+     * @param threads   The number of chunks uploaded concurrently.
+     */
+    public ResultUploader(APIService api, int batchSize, int threads) {
+        this(api, batchSize, threads, null);
+    }
+
+    /**
+     * Constructs a {@code ResultUploader} that journals every chunk before sending it.
+     *
+     * @param api       The API service used to post the results.
+     * @param batchSize The maximum number of results sent in one request.
+     * @param threads   The number of chunks uploaded concurrently.
+     * @param outbox    The journal chunks are written to, or null to send them without journaling.
+     */
+    public ResultUploader(APIService api, int batchSize, int threads, ResultOutbox outbox) {
+        this(api, batchSize, threads, outbox, false);
+    }
+
+    /**
+     * Constructs a {@code ResultUploader} that journals every chunk before sending it.
+     *
+     * @param api            The API service used to post the results.
+     * @param batchSize      The maximum number of results sent in one request.
+     * @param threads        The number of chunks uploaded concurrently.
+     * @param outbox         The journal chunks are written to, or null to send them without journaling.
+     * @param virtualThreads Whether the chunks are uploaded on virtual threads, see {@link IoExecutors}.
+     */
+    public ResultUploader(APIService api, int batchSize, int threads, ResultOutbox outbox, boolean virtualThreads) {
+        if (batchSize < 1 || threads < 1) {
+            throw new IllegalArgumentException("Batch size and threads must be positive");
+        }
+        this.api = api;
+        this.batchSize = batchSize;
+        this.threads = threads;
+        this.outbox = outbox;
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Sets the listener told about the results created by {@link #upload(int, JSONArray)}. Batches replayed from the
+     * outbox are not reported.
+     *
+     * @param listener The listener, or null for none. It is called on the upload threads.
+     */
+    public void setResultListener(ResultListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the selection that the cases of the results are added to before they are uploaded, for runs created
+     * with {@code include_all: false}. Batches replayed from the outbox were added when they were first sent.
+     *
+     * @param caseSelection The selection, or null if the runs include all cases.
+     */
+    public void setCaseSelection(RunCaseSelection caseSelection) {
+        this.caseSelection = caseSelection;
+    }
+
+    /**
+     * Uploads the given results to a test run in chunks of at most {@code batchSize} results.
+     *
+     * @param runId   The ID of the test run the results belong to.
+     * @param results The results to upload.
+     * @return A summary of how many results were sent and how many were lost.
+     */
+    public UploadSummary upload(int runId, JSONArray results) {
+        includeCases(runId, results);
+        List<JSONArray> chunks = split(results);
+        long start = System.nanoTime();
+        AtomicInteger sent = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        ExecutorService executor = IoExecutors.newFixedPool("testrail-upload", Math.min(threads, Math.max(chunks.size(), 1)), virtualThreads);
+        try {
+            List<CompletableFuture<Void>> uploads = new ArrayList<>(chunks.size());
+            for (int i = 0; i < chunks.size(); i++) {
+                JSONArray chunk = chunks.get(i);
+                int chunkNumber = i + 1;
+                uploads.add(CompletableFuture.runAsync(() -> {
+                    if (sendChunk(runId, chunk, chunkNumber, chunks.size())) {
+                        sent.addAndGet(chunk.length());
+                    } else {
+                        failed.addAndGet(chunk.length());
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(uploads.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+
+        UploadSummary summary = new UploadSummary(sent.get(), failed.get(), chunks.size(), System.nanoTime() - start);
+        LOGGER.info("Uploaded {} results to Test Run {} in {} chunks ({} ms, {} results/s), {} failed",
+                summary.getSent(), runId, summary.getChunks(), summary.getElapsedMillis(),
+                String.format("%.1f", summary.getResultsPerSecond()), summary.getFailed());
+        return summary;
+    }
+
+    /**
+     * Uploads the results of several test runs at the same time, each run split into chunks as in
+     * {@link #upload(int, JSONArray)}.
+     *
+     * @param resultsByRun The results to upload, keyed by the ID of the test run they belong to.
+     * @return A summary over all runs.
+     */
+    public UploadSummary uploadAll(Map<Integer, JSONArray> resultsByRun) {
+        if (resultsByRun.size() == 1) {
+            Map.Entry<Integer, JSONArray> run = resultsByRun.entrySet().iterator().next();
+            return upload(run.getKey(), run.getValue());
+        }
+        long start = System.nanoTime();
+        ExecutorService executor = IoExecutors.newFixedPool("testrail-run-upload", Math.max(resultsByRun.size(), 1), virtualThreads);
+        List<UploadSummary> summaries;
+        try {
+            List<CompletableFuture<UploadSummary>> uploads = new ArrayList<>(resultsByRun.size());
+            resultsByRun.forEach((runId, results) -> uploads.add(CompletableFuture.supplyAsync(() -> upload(runId, results), executor)));
+            summaries = uploads.stream().map(CompletableFuture::join).collect(Collectors.toList());
+        } finally {
+            executor.shutdown();
+        }
+        return new UploadSummary(summaries.stream().mapToInt(UploadSummary::getSent).sum(),
+                summaries.stream().mapToInt(UploadSummary::getFailed).sum(),
+                summaries.stream().mapToInt(UploadSummary::getChunks).sum(),
+                System.nanoTime() - start);
+    }
+
+    /**
+     * @return The throttle, retry and give-up counters of the client behind the API service.
+     */
+    public ClientStats getClientStats() {
+        return api.getClientStats();
+    }
+
+    /**
+     * Sends a single batch of results on the calling thread.
+     *
+     * @param runId The ID of the test run the results belong to.
+     * @param batch The results to send.
+     * @return true if TestRail accepted the batch.
+     */
+    public boolean sendBatch(int runId, JSONArray batch) {
+        includeCases(runId, batch);
+        return sendChunk(runId, batch, 1, 1);
+    }
+
+    /**
+     * Sends the batches left pending in the outbox by earlier uploads, oldest first. Replay stops at the first batch
+     * that still cannot be delivered so later results never overtake earlier ones; the journal is emptied once
+     * nothing is pending.
+     *
+     * @return A summary of how many results were sent and how many are still pending or were rejected.
+     */
+    public UploadSummary replay() {
+        if (outbox == null) {
+            return new UploadSummary(0, 0, 0, 0);
+        }
+        long start = System.nanoTime();
+        int sent = 0;
+        int failed = 0;
+        int batches = 0;
+        try {
+            List<ResultOutbox.PendingBatch> pending = outbox.pending();
+            if (!pending.isEmpty()) {
+                LOGGER.info("Replaying {} pending batch(es) from {}", pending.size(), outbox.getJournal());
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                ResultOutbox.PendingBatch batch = pending.get(i);
+                batches++;
+                Delivery delivery = deliver(batch.getRunId(), batch.getResults(), i + 1, pending.size(), null);
+                acknowledge(batch.getId(), delivery);
+                if (delivery == Delivery.SENT) {
+                    sent += batch.getResults().length();
+                } else if (delivery == Delivery.REJECTED) {
+                    failed += batch.getResults().length();
+                } else {
+                    for (int j = i; j < pending.size(); j++) {
+                        failed += pending.get(j).getResults().length();
+                    }
+                    LOGGER.warn("TestRail is still unavailable, {} batch(es) remain in {}", pending.size() - i, outbox.getJournal());
+                    break;
+                }
+            }
+            outbox.compact();
+        } catch (IOException e) {
+            LOGGER.error("Failed to replay {}: {}", outbox.getJournal(), e.getMessage());
+        }
+        return new UploadSummary(sent, failed, batches, System.nanoTime() - start);
+    }
+
+    private void includeCases(int runId, JSONArray results) {
+        RunCaseSelection selection = caseSelection;
+        if (selection == null || results.length() == 0) {
+            return;
+        }
+        try {
+            selection.include(runId, results);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to add the cases of {} results to Test Run {}, TestRail may reject them: {}", results.length(), runId, e.getMessage());
+        }
+    }
+
+    private boolean sendChunk(int runId, JSONArray chunk, int chunkNumber, int totalChunks) {
+        String batchId = null;
+        if (outbox != null) {
+            try {
+                batchId = outbox.append(runId, chunk);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to journal chunk {}/{}, sending it anyway: {}", chunkNumber, totalChunks, e.getMessage());
+            }
+        }
+        Delivery delivery = deliver(runId, chunk, chunkNumber, totalChunks, listener);
+        if (batchId != null) {
+            try {
+                acknowledge(batchId, delivery);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to acknowledge chunk {}/{} in {}: {}", chunkNumber, totalChunks, outbox.getJournal(), e.getMessage());
+            }
+            if (delivery == Delivery.FAILED) {
+                LOGGER.error("Chunk {}/{} is kept in {} and will be sent again on replay", chunkNumber, totalChunks, outbox.getJournal());
+            }
+        }
+        return delivery == Delivery.SENT;
+    }
+
+    private Delivery deliver(int runId, JSONArray chunk, int chunkNumber, int totalChunks, ResultListener listener) {
+        JSONObject body = new JSONObject().put(RESULTS_KEY, chunk);
+        JSONArray created;
+        try {
+            // The client has already retried whatever TestRail did not process; sending the chunk again after a
+            // timeout or a server error could post its results twice
+            created = api.addResultsForCases(runId, body);
+        } catch (APIException e) {
+            LOGGER.error("Giving up on chunk {}/{} with {} results: {}", chunkNumber, totalChunks, chunk.length(), e.getMessage());
+            // Bad credentials or permissions can be fixed before a replay, and a chunk TestRail may not have received
+            // is left to the outbox; any other client error would fail again
+            return e.isRetryable() || e.getStatusCode() == 401 || e.getStatusCode() == 403 ? Delivery.FAILED : Delivery.REJECTED;
+        } catch (Exception e) {
+            LOGGER.error("Giving up on chunk {}/{} with {} results: {}", chunkNumber, totalChunks, chunk.length(), e.getMessage());
+            return Delivery.FAILED;
+        }
+        if (listener != null) {
+            try {
+                listener.onResultsCreated(runId, chunk, created);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to process the results created for chunk {}/{}: {}", chunkNumber, totalChunks, e.getMessage());
+            }
+        }
+        return Delivery.SENT;
+    }
+
+    private void acknowledge(String batchId, Delivery delivery) throws IOException {
+        if (delivery == Delivery.SENT) {
+            outbox.accept(batchId);
+        } else if (delivery == Delivery.REJECTED) {
+            outbox.reject(batchId);
+        }
+    }
+
+    private enum Delivery {
+        SENT, REJECTED, FAILED
+    }
+
+    private List<JSONArray> split(JSONArray results) {
+        List<JSONArray> chunks = new ArrayList<>((results.length() + batchSize - 1) / batchSize);
+        JSONArray current = new JSONArray();
+        for (int i = 0; i < results.length(); i++) {
+            current.put(results.get(i));
+            if (current.length() == batchSize) {
+                chunks.add(current);
+                current = new JSONArray();
+            }
+        }
+        if (current.length() > 0) {
+            chunks.add(current);
+        }
+        return chunks;
+    }
+
+    /**
+     * Summary of a chunked upload.
+     */
+    public static class UploadSummary {
+        private final int sent;
+        private final int failed;
+        private final int chunks;
+        private final long elapsedNanos;
+
+        UploadSummary(int sent, int failed, int chunks, long elapsedNanos) {
+            this.sent = sent;
+            this.failed = failed;
+            this.chunks = chunks;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getSent() {
+            return sent;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public int getChunks() {
+            return chunks;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        /**
+         * @return The number of results successfully sent per second of wall-clock time.
+         */
+        public double getResultsPerSecond() {
+            return elapsedNanos == 0 ? 0 : sent * 1_000_000_000d / elapsedNanos;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package tech.automationqa.testrail.testrail.services;
+
+import com.intuit.karate.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import tech.automationqa.testrail.testrail.apiClient.APIService;
+import tech.automationqa.testrail.testrail.apiClient.PagedResults;
+import tech.automationqa.testrail.testrail.model.RunTest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@code RunCaseSelection} class keeps the test runs created with {@code include_all: false} limited to the
+ * cases that were actually executed. Before results are posted to such a run, the cases they belong to are added to
+ * the run's selection, so a tag-filtered run of a few hundred scenarios creates a few hundred tests instead of one
+ * per case in the suite.
+ * <p>
+ * TestRail replaces a run's cases with the {@code case_ids} of every update, so each update carries the whole
+ * selection: the cases already in the run, read once with {@code get_tests}, plus the new ones. Very large
+ * selections are added in several updates of at most {@code batchSize} new cases each, and since every update
+ * states the complete selection, resending one after a failure is harmless. Runs that include all cases are left
+ * alone.
+ */
+public class RunCaseSelection {
+    private static final Logger LOGGER = new Logger();
+    private static final String CASE_ID = "case_id";
+
+    private final APIService api;
+    private final int batchSize;
+    private final Map<Integer, Selection> selections = new HashMap<>();
+
+    /**
+     * Constructs a {@code RunCaseSelection}.
+     *
+     * @param api       The API service used to read and update the runs.
+     * @param batchSize The maximum number of cases added to a run in one update.
+     */
+    public RunCaseSelection(APIService api, int batchSize) {
+        this.api = api;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Adds the cases of the given results to their run, unless they are already part of it.
+     *
+     * @param runId   The ID of the test run the results are about to be posted to.
+     * @param results The results, each with its {@code case_id}.
+     */
+    public synchronized void include(int runId, JSONArray results) {
+        Selection selection = selections.computeIfAbsent(runId, this::load);
+        if (selection.includesAll) {
+            return;
+        }
+        IntHashSet added = new IntHashSet(results.length());
+        JSONArray missing = new JSONArray();
+        for (int i = 0; i < results.length(); i++) {
+            int caseId = results.getJSONObject(i).getInt(CASE_ID);
+            if (!selection.cases.contains(caseId) && added.add(caseId)) {
+                missing.put(caseId);
+            }
+        }
+        if (missing.length() == 0) {
+            return;
+        }
+        LOGGER.info("Adding {} cases to Test Run {}, which holds {}", missing.length(), runId, selection.cases.size());
+        try {
+            for (int start = 0; start < missing.length(); start += batchSize) {
+                int end = Math.min(start + batchSize, missing.length());
+                for (int i = start; i < end; i++) {
+                    selection.caseIds.put(missing.getInt(i));
+                }
+                update(runId, selection, new JSONObject().put("include_all", false).put("case_ids", selection.caseIds));
+                for (int i = start; i < end; i++) {
+                    selection.cases.add(missing.getInt(i));
+                }
+            }
+        } catch (RuntimeException e) {
+            // What the run holds now is unknown, read it again before the next update
+            selections.remove(runId);
+            throw e;
+        }
+    }
+
+    private void update(int runId, Selection selection, JSONObject body) {
+        if (selection.planId == 0) {
+            api.updateRun(runId, body);
+        } else if (selection.hasConfigurations) {
+            api.updateRunInPlanEntry(runId, body);
+        } else {
+            api.updatePlanEntry(selection.planId, selection.entryId, body);
+        }
+    }
+
+    private Selection load(int runId) {
+        JSONObject run = api.getTestRun(runId);
+        Selection selection = new Selection(run);
+        if (!selection.includesAll) {
+            try (PagedResults<RunTest> tests = api.streamTests(runId)) {
+                for (RunTest test : tests) {
+                    if (selection.cases.add(test.getCaseId())) {
+                        selection.caseIds.put(test.getCaseId());
+                    }
+                }
+            }
+        }
+        return selection;
+    }
+
+    private static class Selection {
+        private final boolean includesAll;
+        private final int planId;
+        private final String entryId;
+        private final boolean hasConfigurations;
+        private final IntHashSet cases = new IntHashSet(256);
+        private final JSONArray caseIds = new JSONArray();
+
+        Selection(JSONObject run) {
+            this.includesAll = run.optBoolean("include_all", true);
+            this.planId = run.optInt("plan_id", 0);
+            this.entryId = run.optString("entry_id", "");
+            JSONArray configIds = run.optJSONArray("config_ids");
+            this.hasConfigurations = configIds != null && configIds.length() > 0;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package tech.automationqa.testrail.testrail.services;
+
+import com.intuit.karate.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import tech.automationqa.testrail.testrail.apiClient.APIService;
+import tech.automationqa.testrail.testrail.apiClient.PagedResults;
+import tech.automationqa.testrail.testrail.model.Run;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * The {@code ShardCoordinator} class lets a suite that is split across several machines publish to a single test
+ * run. Every shard names the run after the same {@code shard.run.key}, looks for an open run of that name and only
+ * creates one when there is none. Shards that start together may still each create a run, so after creating one a
+ * shard looks again and, when an older run of the same name exists, deletes its own, which has no results yet, and
+ * joins the older one. All shards therefore end up in the run with the lowest ID. In a test plan the same is done
+ * with plan entries.
+ * <p>
+ * Once its results are uploaded, each shard records that it has finished, and only the shard that completes the
+ * set closes the plan. With {@code shard.lock.dir} on storage shared by the shards, a shard writes a marker file
+ * and the one that sees all of them and manages to create the close lock closes the plan. Otherwise a line per
+ * shard is added to the description of the run. TestRail replaces the description as a whole, so two shards
+ * finishing together can overwrite each other's line; each shard therefore reads the description again after a
+ * pause and writes its line once more when it is gone.
+ */
+public class ShardCoordinator {
+    private static final Logger LOGGER = new Logger();
+    private static final Pattern FINISHED = Pattern.compile("Shard (\\d+) of (\\d+) finished");
+    private static final Pattern DONE_FILE = Pattern.compile("shard-\\d+\\.done");
+    private static final String CLOSE_LOCK = "close.lock";
+    private static final String DESCRIPTION = "description";
+    private static final long SETTLE_MILLIS = 2000;
+    private static final int MARK_ATTEMPTS = 5;
+
+    private final APIService api;
+    private final int index;
+    private final int count;
+    private final String runKey;
+    private final Path lockDirectory;
+
+    /**
+     * Constructs a {@code ShardCoordinator}.
+     *
+     * @param api           The API service used to find, create and update the shared run.
+     * @param index         The number of this shard, from 1 to {@code count}.
+     * @param count         The number of shards the suite is split into.
+     * @param runKey        The key shared by the shards of one build, such as the CI pipeline ID.
+     * @param lockDirectory The shared directory the shards record their completion in, or null to record it in the
+     *                      description of the run.
+     */
+    public ShardCoordinator(APIService api, int index, int count, String runKey, Path lockDirectory) {
+        this.api = api;
+        this.index = index;
+        this.count = count;
+        this.runKey = runKey;
+        this.lockDirectory = lockDirectory;
+    }
+
+    /**
+     * @param baseName The configured {@code test.run.create.name}.
+     * @return The name of the run shared by the shards, the same on every shard of the build.
+     */
+    public String getRunName(String baseName) {
+        return baseName + " " + runKey;
+    }
+
+    /**
+     * Finds the open run of the suite named in {@code runBody} that is not part of a plan, or creates it.
+     *
+     * @param projectId The ID of the project.
+     * @param runBody   The body {@code add_run} is called with, holding the shared name and the suite ID.
+     * @return The run, of which at least the {@code id} is set.
+     */
+    public JSONObject findOrCreateRun(int projectId, JSONObject runBody) {
+        String name = runBody.getString("name");
+        int suiteId = runBody.getInt("suite_id");
+        Optional<Run> existing = findRun(projectId, suiteId, name);
+        if (existing.isPresent()) {
+            LOGGER.info("Shard {} of {} joins Test Run {} '{}'", index, count, existing.get().getId(), name);
+            return new JSONObject().put("id", existing.get().getId());
+        }
+        JSONObject created = api.addRunToProject(projectId, runBody);
+        int createdId = created.getInt("id");
+        Optional<Run> oldest = findRun(projectId, suiteId, name);
+        if (oldest.isPresent() && oldest.get().getId() < createdId) {
+            LOGGER.info("Shard {} of {} created Test Run {} at the same time as another shard, deleting it and joining Test Run {}",
+                    index, count, createdId, oldest.get().getId());
+            api.deleteRun(createdId);
+            return new JSONObject().put("id", oldest.get().getId());
+        }
+        LOGGER.info("Shard {} of {} created Test Run {} '{}'", index, count, createdId, name);
+        return created;
+    }
+
+    /**
+     * Finds the entry of the suite named in {@code entryBody} in the plan, or adds it.
+     *
+     * @param planId    The ID of the test plan.
+     * @param entryBody The body {@code add_plan_entry} is called with, holding the shared name and the suite ID.
+     * @return The plan entry with its runs.
+     */
+    public JSONObject findOrCreatePlanEntry(int planId, JSONObject entryBody) {
+        String name = entryBody.getString("name");
+        int suiteId = entryBody.getInt("suite_id");
+        Optional<JSONObject> existing = findPlanEntry(planId, suiteId, name);
+        if (existing.isPresent()) {
+            LOGGER.info("Shard {} of {} joins the entry '{}' of Test Plan {}", index, count, name, planId);
+            return existing.get();
+        }
+        JSONObject created = api.addRunToTestPlan(planId, entryBody);
+        Optional<JSONObject> oldest = findPlanEntry(planId, suiteId, name);
+        if (oldest.isPresent() && firstRunId(oldest.get()) < firstRunId(created)) {
+            LOGGER.info("Shard {} of {} added an entry to Test Plan {} at the same time as another shard, deleting it and joining the older one",
+                    index, count, planId);
+            api.deletePlanEntry(planId, created.getString("id"));
+            return oldest.get();
+        }
+        LOGGER.info("Shard {} of {} added the entry '{}' to Test Plan {}", index, count, name, planId);
+        return created;
+    }
+
+    /**
+     * Records that this shard has finished publishing and tells whether it is the shard that completed the set.
+     * Failures are logged, and reported as not being the last shard, so the plan is never closed twice on their
+     * account.
+     *
+     * @param runId The run the shards publish to, where the completion is recorded without a lock directory; 0 if
+     *              it was never resolved.
+     * @return true if every shard has finished and this one is to close the plan.
+     */
+    public boolean finish(int runId) {
+        try {
+            if (lockDirectory != null) {
+                return finishWithLockFiles();
+            }
+            if (runId == 0) {
+                LOGGER.warn("Shard {} of {} has no Test Run to record its completion in", index, count);
+                return false;
+            }
+            return finishInDescription(runId);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Shard {} of {} failed to record its completion: {}", index, count, e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean finishWithLockFiles() throws IOException {
+        Path directory = lockDirectory.resolve(runKey.replaceAll("[^A-Za-z0-9._-]", "_"));
+        Files.createDirectories(directory);
+        Files.write(directory.resolve("shard-" + index + ".done"), new byte[0]);
+        long finished;
+        try (Stream<Path> files = Files.list(directory)) {
+            finished = files.filter(file -> DONE_FILE.matcher(file.getFileName().toString()).matches()).count();
+        }
+        LOGGER.info("Shard {} of {} finished, {} shards are done", index, count, finished);
+        if (finished < count) {
+            return false;
+        }
+        try {
+            Files.createFile(directory.resolve(CLOSE_LOCK));
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    private boolean finishInDescription(int runId) {
+        for (int attempt = 1; attempt <= MARK_ATTEMPTS; attempt++) {
+            JSONObject run = api.getTestRun(runId);
+            String description = run.optString(DESCRIPTION, "");
+            boolean completed = false;
+            if (!finishedShards(description).contains(index)) {
+                String updated = (description.isEmpty() ? "" : description + "\n") + "Shard " + index + " of " + count + " finished";
+                update(run, new JSONObject().put(DESCRIPTION, updated));
+                completed = finishedShards(updated).size() >= count;
+            }
+            pause();
+            Set<Integer> finished = finishedShards(api.getTestRun(runId).optString(DESCRIPTION, ""));
+            if (finished.contains(index)) {
+                LOGGER.info("Shard {} of {} finished, {} shards are done", index, count, finished.size());
+                return completed;
+            }
+            LOGGER.warn("The completion of shard {} was overwritten by another shard in Test Run {}, recording it again", index, runId);
+        }
+        LOGGER.warn("Shard {} of {} could not record its completion in Test Run {}", index, count, runId);
+        return false;
+    }
+
+    private Set<Integer> finishedShards(String description) {
+        Set<Integer> finished = new HashSet<>();
+        Matcher matcher = FINISHED.matcher(description);
+        while (matcher.find()) {
+            if (Integer.parseInt(matcher.group(2)) == count) {
+                finished.add(Integer.parseInt(matcher.group(1)));
+            }
+        }
+        return finished;
+    }
+
+    private void update(JSONObject run, JSONObject body) {
+        int planId = run.optInt("plan_id", 0);
+        JSONArray configIds = run.optJSONArray("config_ids");
+        if (planId == 0) {
+            api.updateRun(run.getInt("id"), body);
+        } else if (configIds != null && configIds.length() > 0) {
+            api.updateRunInPlanEntry(run.getInt("id"), body);
+        } else {
+            api.updatePlanEntry(planId, run.getString("entry_id"), body);
+        }
+    }
+
+    private Optional<Run> findRun(int projectId, int suiteId, String name) {
+        Run oldest = null;
+        try (PagedResults<Run> runs = api.streamRuns(projectId, suiteId)) {
+            for (Run run : runs) {
+                if (name.equals(run.getName()) && (oldest == null || run.getId() < oldest.getId())) {
+                    oldest = run;
+                }
+            }
+        }
+        return Optional.ofNullable(oldest);
+    }
+
+    private Optional<JSONObject> findPlanEntry(int planId, int suiteId, String name) {
+        JSONArray entries = api.getPlan(planId).optJSONArray("entries");
+        JSONObject oldest = null;
+        for (int i = 0; entries != null && i < entries.length(); i++) {
+            JSONObject entry = entries.getJSONObject(i);
+            if (entry.optInt("suite_id") == suiteId && name.equals(entry.optString("name"))
+                    && (oldest == null || firstRunId(entry) < firstRunId(oldest))) {
+                oldest = entry;
+            }
+        }
+        return Optional.ofNullable(oldest);
+    }
+
+    private static int firstRunId(JSONObject entry) {
+        JSONArray runs = entry.getJSONArray("runs");
+        int first = Integer.MAX_VALUE;
+        for (int i = 0; i < runs.length(); i++) {
+            first = Math.min(first, runs.getJSONObject(i).getInt("id"));
+        }
+        return first;
+    }
+
+    /**
+     * Waits long enough for a shard that read the description before this one wrote it to have written it back.
+     */
+    private static void pause() {
+        try {
+            Thread.sleep(SETTLE_MILLIS + ThreadLocalRandom.current().nextLong(SETTLE_MILLIS / 2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package tech.automationqa.testrail.testrail.services;
+
+import com.intuit.karate.Logger;
+import com.intuit.karate.RuntimeHook;
+import com.intuit.karate.core.ScenarioResult;
+import com.intuit.karate.core.ScenarioRuntime;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code StreamingResultPublisher} is a Karate {@link RuntimeHook} that uploads results to TestRail while the
+ * tests are still running. Every finished scenario is pushed onto a bounded queue and a background drainer flushes
+ * micro-batches to {@code add_results_for_cases}, so by the end of the run only the tail is left to upload. When a
+ * plan fans out to several configuration runs, each result is routed through a {@link PlanRunRouter} and every run
+ * keeps its own batch.
+ */
+public class StreamingResultPublisher implements RuntimeHook {
+    private static final Logger LOGGER = new Logger();
+
+    private final ResultUploader uploader;
+    private final PlanRunRouter router;
+    private final TestCaseIndex caseIndex;
+    private final int batchSize;
+    private final int commentMaxLength;
+    private final long flushIntervalNanos;
+    private final BlockingQueue<ScenarioResult> queue;
+    private final Thread drainer;
+    private volatile boolean finished;
+    private int sent;
+    private int failed;
+
+    /**
+     * Constructs a {@code StreamingResultPublisher}.
+     *
+     * @param uploader            The uploader used to send each batch.
+     * @param router              Decides which test run each result belongs to.
+     * @param caseIndex           The index used to match scenarios to test cases.
+     * @param batchSize           The maximum number of results sent in one request.
+     * @param queueSize           The maximum number of scenarios waiting to be uploaded.
+     * @param flushIntervalMillis The maximum time a partial batch waits before it is uploaded.
+     * @param commentMaxLength    The maximum length of the comment of a result.
+     * @param virtualThreads      Whether the drainer runs on a virtual thread, see {@link IoExecutors}.
+     */
+    public StreamingResultPublisher(ResultUploader uploader, PlanRunRouter router, TestCaseIndex caseIndex, int batchSize, int queueSize, long flushIntervalMillis,
+                                    int commentMaxLength, boolean virtualThreads) {
+        this.uploader = uploader;
+        this.router = router;
+        this.caseIndex = caseIndex;
+        this.batchSize = batchSize;
+        this.commentMaxLength = commentMaxLength;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.drainer = IoExecutors.newThread("testrail-result-publisher", this::drain, virtualThreads);
+    }
+
+    /**
+     * Starts the background drainer.
+     */
+    public void start() {
+        drainer.start();
+    }
+
+    /**
+     * Queues the result of every top-level scenario. Scenarios run through {@code call} are part of their caller's
+     * result and are not published on their own. Blocks while the queue is full.
+     *
+     * @param sr The runtime of the scenario that just finished.
+     */
+    @Override
+    public void afterScenario(ScenarioRuntime sr) {
+        if (!sr.caller.isNone() || sr.dryRun) {
+            return;
+        }
+        offer(sr.result);
+    }
+
+    /**
+     * Queues the result of a scenario for upload, blocking while the queue is full. Results that do not come from
+     * a running Karate suite, such as the ones read back from a report, are queued this way.
+     *
+     * @param result The result of a finished scenario.
+     */
+    public void offer(ScenarioResult result) {
+        try {
+            queue.put(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while queueing the result of {}", result.getScenario().getName());
+        }
+    }
+
+    /**
+     * Stops accepting results, uploads whatever is still queued and waits for the drainer to finish.
+     */
+    public void finish() {
+        finished = true;
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted while flushing results to TestRail");
+        }
+        caseIndex.getDiagnostics().ifPresent(report -> LOGGER.warn("Test Run {}: {}", router.getRunIds(), report));
+        router.getDiagnostics().ifPresent(report -> LOGGER.warn("Test Run {}: {}", router.getRunIds(), report));
+        LOGGER.info("Streamed {} results to Test Run {}, {} failed", sent, router.getRunIds(), failed);
+        if (failed > 0) {
+            LOGGER.error("Failed to add {} results to TestRail", failed);
+        }
+        LOGGER.info("TestRail requests: {}", uploader.getClientStats());
+    }
+
+    /**
+     * @return The number of results uploaded, once {@link #finish()} has returned.
+     */
+    public int getSent() {
+        return sent;
+    }
+
+    /**
+     * @return The number of results that could not be uploaded, once {@link #finish()} has returned.
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    private void drain() {
+        Map<Integer, JSONArray> batches = new LinkedHashMap<>();
+        int pending = 0;
+        long lastFlush = System.nanoTime();
+        while (!finished || !queue.isEmpty()) {
+            ScenarioResult result;
+            try {
+                result = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (result != null) {
+                Optional<JSONObject> json = TestRailService.buildScenarioResultJson(result, caseIndex, commentMaxLength);
+                Optional<Integer> runId = json.isPresent() ? router.route(result.getScenario()) : Optional.empty();
+                if (runId.isPresent()) {
+                    JSONArray batch = batches.computeIfAbsent(runId.get(), id -> new JSONArray()).put(json.get());
+                    pending++;
+                    if (batch.length() >= batchSize) {
+                        flush(runId.get(), batch);
+                        batches.remove(runId.get());
+                        pending -= batch.length();
+                    }
+                }
+            }
+            if (pending > 0 && System.nanoTime() - lastFlush >= flushIntervalNanos) {
+                flushAll(batches);
+                pending = 0;
+                lastFlush = System.nanoTime();
+            }
+        }
+        flushAll(batches);
+    }
+
+    private void flushAll(Map<Integer, JSONArray> batches) {
+        batches.forEach(this::flush);
+        batches.clear();
+    }
+
+    private void flush(int runId, JSONArray batch) {
+        if (uploader.sendBatch(runId, batch)) {
+            sent += batch.length();
+        } else {
+            failed += batch.length();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package tech.automationqa.testrail.testrail.services;
+
+import com.intuit.karate.Logger;
+import tech.automationqa.testrail.testrail.apiClient.APIService;
+import tech.automationqa.testrail.testrail.apiClient.PagedResults;
+import tech.automationqa.testrail.testrail.model.Section;
+import tech.automationqa.testrail.testrail.model.TestCase;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * The {@code SuiteMetadataCache} class keeps the cases and sections of a suite in a compact binary file on disk,
+ * keyed by project and suite ID. A snapshot younger than the TTL is used as is without contacting TestRail. An
+ * older snapshot is refreshed incrementally by asking only for the cases updated since it was taken, and it is
+ * rebuilt from scratch once it exceeds the full refresh age so that deleted cases eventually disappear. The suite
+ * of each existing run is remembered as well, since it never changes.
+ */
+public class SuiteMetadataCache {
+    private static final Logger LOGGER = new Logger();
+    private static final int MAGIC = 0x54524331; // "TRC1"
+    private static final String RUNS_FILE = "runs.properties";
+
+    private final APIService api;
+    private final int projectId;
+    private final Path directory;
+    private final Duration ttl;
+    private final Duration fullRefreshAge;
+
+    /**
+     * Constructs a {@code SuiteMetadataCache}.
+     *
+     * @param api            The API service used to refresh the cache.
+     * @param projectId      The ID of the project the suites belong to.
+     * @param directory      The directory where the cache files are stored.
+     * @param ttl            How long a snapshot is used without contacting TestRail.
+     * @param fullRefreshAge How old a snapshot may get before it is rebuilt from scratch.
+     */
+    public SuiteMetadataCache(APIService api, int projectId, Path directory, Duration ttl, Duration fullRefreshAge) {
+        this.api = api;
+        this.projectId = projectId;
+        this.directory = directory;
+        this.ttl = ttl;
+        this.fullRefreshAge = fullRefreshAge;
+    }
+
+    /**
+     * @param suiteId The ID of the test suite.
+     * @return The cases of the suite, refreshed from TestRail if the snapshot has expired.
+     */
+    public List<TestCase> getCases(int suiteId) {
+        return load(suiteId).cases;
+    }
+
+    /**
+     * @param suiteId The ID of the test suite.
+     * @return The sections of the suite, refreshed from TestRail if the snapshot has expired.
+     */
+    public List<Section> getSections(int suiteId) {
+        return load(suiteId).sections;
+    }
+
+    /**
+     * Returns the suite of an existing run, asking TestRail only the first time the run is seen.
+     *
+     * @param runId The ID of the test run.
+     * @return The ID of the suite the run was created from.
+     */
+    public synchronized int getRunSuiteId(int runId) {
+        Path runsFile = directory.resolve(RUNS_FILE);
+        Properties runs = new Properties();
+        if (Files.exists(runsFile)) {
+            try (InputStream in = Files.newInputStream(runsFile)) {
+                runs.load(in);
+            } catch (IOException e) {
+                LOGGER.warn("Ignoring unreadable run cache {}: {}", runsFile, e.getMessage());
+            }
+        }
+        String cached = runs.getProperty(String.valueOf(runId));
+        if (cached != null) {
+            return Integer.parseInt(cached);
+        }
+        int suiteId = api.getTestRun(runId).getInt("suite_id");
+        runs.setProperty(String.valueOf(runId), String.valueOf(suiteId));
+        try {
+            Files.createDirectories(directory);
+            try (OutputStream out = Files.newOutputStream(runsFile)) {
+                runs.store(out, "TestRail run -> suite");
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to update run cache {}: {}", runsFile, e.getMessage());
+        }
+        return suiteId;
+    }
+
+    private synchronized Snapshot load(int suiteId) {
+        Path file = directory.resolve(String.format("suite-%d-%d.bin", projectId, suiteId));
+        Optional<Snapshot> cached = read(file);
+        Instant now = Instant.now();
+
+        Snapshot snapshot;
+        if (cached.isPresent() && cached.get().fetchedAt.plus(ttl).isAfter(now)) {
+            LOGGER.info("Using cached metadata for suite {} ({} cases)", suiteId, cached.get().cases.size());
+            return cached.get();
+        } else if (cached.isPresent() && cached.get().fetchedAt.plus(fullRefreshAge).isAfter(now)) {
+            snapshot = refresh(suiteId, cached.get(), now);
+        } else {
+            snapshot = fetch(suiteId, now);
+        }
+        write(file, snapshot);
+        return snapshot;
+    }
+
+    private Snapshot fetch(int suiteId, Instant now) {
+        LOGGER.info("Downloading metadata for suite {}", suiteId);
+        List<TestCase> cases = new ArrayList<>();
+        api.streamCases(projectId, suiteId).forEach(cases::add);
+        return new Snapshot(now, cases, fetchSections(suiteId));
+    }
+
+    private Snapshot refresh(int suiteId, Snapshot cached, Instant now) {
+        Map<Integer, TestCase> cases = new LinkedHashMap<>();
+        cached.cases.forEach(testCase -> cases.put(testCase.getId(), testCase));
+        int updated = 0;
+        // The previous snapshot time is used as the boundary, so cases changed while it was being taken are fetched again.
+        try (PagedResults<TestCase> changed = api.streamCasesUpdatedAfter(projectId, suiteId, cached.fetchedAt.getEpochSecond())) {
+            for (TestCase testCase : changed) {
+                cases.put(testCase.getId(), testCase);
+                updated++;
+            }
+        }
+        LOGGER.info("Refreshed metadata for suite {}: {} case(s) updated since {}", suiteId, updated, cached.fetchedAt);
+        return new Snapshot(now, new ArrayList<>(cases.values()), fetchSections(suiteId));
+    }
+
+    private List<Section> fetchSections(int suiteId) {
+        List<Section> sections = new ArrayList<>();
+        api.streamSections(projectId, suiteId).forEach(sections::add);
+        return sections;
+    }
+
+    private Optional<Snapshot> read(Path file) {
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                return Optional.empty();
+            }
+            Instant fetchedAt = Instant.ofEpochSecond(in.readLong());
+            int caseCount = in.readInt();
+            List<TestCase> cases = new ArrayList<>(caseCount);
+            for (int i = 0; i < caseCount; i++) {
+                int id = in.readInt();
+                int sectionId = in.readInt();
+                String title = readString(in);
+                int stepCount = in.readInt();
+                List<TestCase.Step> steps = stepCount == 0 ? Collections.emptyList() : new ArrayList<>(stepCount);
+                for (int s = 0; s < stepCount; s++) {
+                    steps.add(new TestCase.Step(readNullable(in), readNullable(in)));
+                }
+                cases.add(new TestCase(id, title, sectionId, steps));
+            }
+            int sectionCount = in.readInt();
+            List<Section> sections = new ArrayList<>(sectionCount);
+            for (int i = 0; i < sectionCount; i++) {
+                sections.add(new Section(in.readInt(), readString(in)));
+            }
+            return Optional.of(new Snapshot(fetchedAt, cases, sections));
+        } catch (IOException e) {
+            LOGGER.warn("Ignoring unreadable metadata cache {}: {}", file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void write(Path file, Snapshot snapshot) {
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeLong(snapshot.fetchedAt.getEpochSecond());
+                out.writeInt(snapshot.cases.size());
+                for (TestCase testCase : snapshot.cases) {
+                    out.writeInt(testCase.getId());
+                    out.writeInt(testCase.getSectionId());
+                    writeString(out, testCase.getTitle());
+                    out.writeInt(testCase.getSteps().size());
+                    for (TestCase.Step step : testCase.getSteps()) {
+                        writeNullable(out, step.getContent());
+                        writeNullable(out, step.getExpected());
+                    }
+                }
+                out.writeInt(snapshot.sections.size());
+                for (Section section : snapshot.sections) {
+                    out.writeInt(section.getId());
+                    writeString(out, section.getName());
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write metadata cache {}: {}", file, e.getMessage());
+        } finally {
+            // A write that failed halfway must not leave its temporary file behind in the cache directory
+            if (temp != null) {
+                deleteQuietly(temp);
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            writeString(out, value);
+        }
+    }
+
+    private static class Snapshot {
+        private final Instant fetchedAt;
+        private final List<TestCase> cases;
+        private final List<Section> sections;
+
+        Snapshot(Instant fetchedAt, List<TestCase> cases, List<Section> sections) {
+            this.fetchedAt = fetchedAt;
+            this.cases = cases;
+            this.sections = sections;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package tech.automationqa.testrail.testrail.services;
+
+import com.intuit.karate.core.Scenario;
+import com.intuit.karate.core.Tag;
+import tech.automationqa.testrail.testrail.model.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+
+/**
+ * The {@code TestCaseIndex} class maps Karate scenarios to TestRail case IDs in constant time. It is built once
+ * per run from the suite's test cases and resolves a scenario through its case ID, given by a {@code case_id}
+ * column in a Scenario Outline's examples or by a tag such as {@code @C1234} on the scenario or on an
+ * {@code Examples:} table, and otherwise through its title. Case IDs are kept in a primitive int set. Scenarios
+ * that cannot be matched, tags naming cases outside the suite and titles shared by several cases are collected so
+ * they can be reported together once all results have been processed.
+ * <p>
+ * An index created with {@link #caseIdsOnly(Iterable)} holds only the IDs of the suite's cases, without their
+ * titles and steps, so the suite does not have to be downloaded in full when every scenario carries a case ID. The
+ * IDs are still checked, since TestRail rejects a whole batch of results when one of its cases is unknown.
+ */
+public class TestCaseIndex {
+    /**
+     * Name of the Scenario Outline examples column holding the case ID of each row, as {@code C1234} or {@code 1234}.
+     */
+    public static final String CASE_ID_COLUMN = "case_id";
+
+    private final Map<String, Integer> idsByTitle;
+    private final IntHashSet caseIds;
+    private final boolean idsOnly;
+    private final Map<String, List<Integer>> duplicateTitles = new LinkedHashMap<>();
+    private final Set<String> unmatchedScenarios = new LinkedHashSet<>();
+    private final Set<String> unknownCaseIds = new LinkedHashSet<>();
+    private final Set<String> usedDuplicateTitles = new LinkedHashSet<>();
+
+    /**
+     * Builds the index from the test cases of a suite.
+     *
+     * @param testCases The test cases of the suite, iterated once
+     */
+    public TestCaseIndex(Iterable<TestCase> testCases) {
+        this.idsByTitle = new HashMap<>();
+        this.caseIds = new IntHashSet(1024);
+        this.idsOnly = false;
+        for (TestCase testCase : testCases) {
+            int id = testCase.getId();
+            String title = testCase.getTitle();
+            caseIds.add(id);
+            Integer existing = idsByTitle.putIfAbsent(title, id);
+            if (existing != null) {
+                duplicateTitles.computeIfAbsent(title, t -> new ArrayList<>(List.of(existing))).add(id);
+            }
+        }
+    }
+
+    private TestCaseIndex(IntHashSet caseIds) {
+        this.idsByTitle = new HashMap<>();
+        this.caseIds = caseIds;
+        this.idsOnly = true;
+    }
+
+    /**
+     * Creates an index from the IDs of the suite's cases alone, which resolves scenarios only through the case IDs
+     * they carry.
+     *
+     * @param caseIds The IDs of the suite's cases, iterated once
+     * @return The index
+     */
+    public static TestCaseIndex caseIdsOnly(Iterable<Integer> caseIds) {
+        IntHashSet ids = new IntHashSet(1024);
+        for (int id : caseIds) {
+            ids.add(id);
+        }
+        return new TestCaseIndex(ids);
+    }
+
+    /**
+     * Resolves the TestRail case ID for a scenario. A case ID carried by the scenario takes precedence over the
+     * title; when a title is shared by several cases the first case returned by TestRail is used. Misses are
+     * recorded for {@link #getDiagnostics()}.
+     *
+     * @param scenario The executed scenario
+     * @return The matching case ID, or empty if the scenario is not part of the suite
+     */
+    public OptionalInt resolve(Scenario scenario) {
+        OptionalInt tagged = findCaseId(scenario);
+        if (tagged.isPresent()) {
+            if (caseIds.contains(tagged.getAsInt())) {
+                return tagged;
+            }
+            synchronized (unknownCaseIds) {
+                unknownCaseIds.add(scenario.getName() + " (C" + tagged.getAsInt() + ")");
+            }
+            if (idsOnly) {
+                return OptionalInt.empty();
+            }
+        }
+        String title = scenario.getName();
+        Integer id = idsByTitle.get(title);
+        if (id == null) {
+            synchronized (unmatchedScenarios) {
+                unmatchedScenarios.add(title);
+            }
+            return OptionalInt.empty();
+        }
+        if (duplicateTitles.containsKey(title)) {
+            synchronized (usedDuplicateTitles) {
+                usedDuplicateTitles.add(title);
+            }
+        }
+        return OptionalInt.of(id);
+    }
+
+    /**
+     * Reads the case ID a scenario carries, without checking that the case exists. The {@code case_id} column of an
+     * outline example wins over tags, and the last {@code @C<id>} tag wins over earlier ones, so a tag on an
+     * {@code Examples:} table overrides the one on its Scenario Outline.
+     *
+     * @param scenario The scenario
+     * @return The case ID, or empty if the scenario does not carry one
+     */
+    public static OptionalInt findCaseId(Scenario scenario) {
+        if (scenario.isOutlineExample() && scenario.getExampleData() != null) {
+            Object column = scenario.getExampleData().get(CASE_ID_COLUMN);
+            int id = column == null ? -1 : parseCaseId(column.toString(), false);
+            if (id > 0) {
+                return OptionalInt.of(id);
+            }
+        }
+        List<Tag> tags = scenario.getTags();
+        if (tags != null) {
+            for (int i = tags.size() - 1; i >= 0; i--) {
+                int id = parseCaseId(tags.get(i).getName(), true);
+                if (id > 0) {
+                    return OptionalInt.of(id);
+                }
+            }
+        }
+        return OptionalInt.empty();
+    }
+
+    /**
+     * Parses {@code C1234} (or {@code c1234}) into 1234 without a regex.
+     *
+     * @param value         The tag name or column value
+     * @param prefixRequired Whether the {@code C} prefix is mandatory
+     * @return The ID, or -1 if the value is not a case ID
+     */
+    private static int parseCaseId(String value, boolean prefixRequired) {
+        int start = 0;
+        if (!value.isEmpty() && (value.charAt(0) == 'C' || value.charAt(0) == 'c')) {
+            start = 1;
+        } else if (prefixRequired) {
+            return -1;
+        }
+        int length = value.length();
+        if (start == length || length - start > 9) {
+            return -1;
+        }
+        int id = 0;
+        for (int i = start; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id > 0 ? id : -1;
+    }
+
+    /**
+     * Builds a single report of the scenarios that could not be matched, the case IDs that are not part of the
+     * suite and the duplicated titles that were used for matching.
+     *
+     * @return The aggregated diagnostic, or empty if every scenario matched a unique case
+     */
+    public Optional<String> getDiagnostics() {
+        if (unmatchedScenarios.isEmpty() && usedDuplicateTitles.isEmpty() && unknownCaseIds.isEmpty()) {
+            return Optional.empty();
+        }
+        StringBuilder report = new StringBuilder();
+        if (!unknownCaseIds.isEmpty()) {
+            report.append(unknownCaseIds.size()).append(" scenario(s) carry a case ID that is not part of the test suite, ")
+                    .append(idsOnly ? "their results are not posted:" : "their title was used instead:");
+            unknownCaseIds.forEach(name -> report.append(System.lineSeparator()).append("  - ").append(name));
+        }
+        if (!unmatchedScenarios.isEmpty()) {
+            if (report.length() > 0) {
+                report.append(System.lineSeparator());
+            }
+            report.append(unmatchedScenarios.size()).append(" scenario(s) are not part of the test suite:");
+            unmatchedScenarios.forEach(name -> report.append(System.lineSeparator()).append("  - ").append(name));
+        }
+        if (!usedDuplicateTitles.isEmpty()) {
+            if (report.length() > 0) {
+                report.append(System.lineSeparator());
+            }
+            report.append(usedDuplicateTitles.size()).append(" scenario title(s) match more than one test case, the first one was used:");
+            usedDuplicateTitles.forEach(title -> report.append(System.lineSeparator()).append("  - ").append(title).append(' ').append(duplicateTitles.get(title)));
+        }
+        return Optional.of(report.toString());
+    }
+}
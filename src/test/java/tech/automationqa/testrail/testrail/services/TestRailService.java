@@ -3,30 +3,44 @@ package tech.automationqa.testrail.testrail.services;
 import tech.automationqa.testrail.testrail.apiClient.APIClient;
 
 import tech.automationqa.testrail.testrail.apiClient.APIService;
+import tech.automationqa.testrail.testrail.apiClient.HttpClientTransport;
+import tech.automationqa.testrail.testrail.apiClient.HttpTransport;
+import tech.automationqa.testrail.testrail.apiClient.RateLimiter;
+import tech.automationqa.testrail.testrail.apiClient.RetryPolicy;
+import tech.automationqa.testrail.testrail.apiClient.UrlConnectionTransport;
 import com.intuit.karate.Logger;
 import com.intuit.karate.Results;
 import com.intuit.karate.core.Scenario;
+import com.intuit.karate.core.ScenarioResult;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import tech.automationqa.testrail.testrail.StepsSummary;
+import tech.automationqa.testrail.testrail.ConfigSnapshot;
+import tech.automationqa.testrail.testrail.Configuration;
 import tech.automationqa.testrail.testrail.TestrailProperty;
+import tech.automationqa.testrail.testrail.metrics.MetricsRegistry;
+import tech.automationqa.testrail.testrail.model.Section;
+import tech.automationqa.testrail.testrail.model.TestCase;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import static tech.automationqa.testrail.testrail.AnalyseResults.*;
-import static tech.automationqa.testrail.testrail.Configuration.*;
-import static tech.automationqa.testrail.testrail.Configuration.getConfigurationInteger;
 
 /**
  * The {@code TestRailService} class is responsible for interfacing with TestRail's API client.
@@ -38,19 +52,37 @@ public class TestRailService {
     public static final Logger LOGGER = new Logger();
 
     // Configuration fields
-    private static final Boolean isNewRun = getConfigurationBoolean(TestrailProperty.RUN_NEW).orElse(false);
     private static final String TEST_SUITE_ID_NOT_CONFIGURED = "Test Suite ID not configured";
     private static final String TEST_RUN_ID_NOT_CONFIGURED = "Test Run ID not configured";
     private static final String TEST_SUITE_ID_KEY = "suite_id";
     private static final String TEST_RUN_ID_KEY = "run_id";
-    private static final int testPlanId = getConfigurationInteger(TestrailProperty.TEST_PLAN_ID).orElse(0);
-    private static final int projectID = getConfigurationInteger(TestrailProperty.PROJECT_ID).orElseThrow(() -> new RuntimeException("Project ID not configured"));
-    private static final String runName = getConfigurationString(TestrailProperty.RUN_NAME).orElse("Automated test run");
-    private static final Boolean closeTestPlan = getConfigurationBoolean(TestrailProperty.CLOSE_TEST_PLAN).orElse(false);
-    private static final int testSuiteId = getConfigurationInteger(TestrailProperty.TEST_SUITE_ID).orElse(0);
-    private static final String featuresPath = "src/test/java/com/elavon/domainservices/eu/customerdomainservice/feature/";
+    private final ConfigSnapshot config;
+    private final boolean isNewRun;
+    private final int testPlanId;
+    private final int projectID;
+    private final String runName;
+    private final boolean closeTestPlan;
+    private final int testSuiteId;
+    private final int resultsBatchSize;
+    private final int uploadThreads;
+    private final int commentMaxLength;
+    private final boolean virtualThreads;
+    private final int streamQueueSize;
+    private final long streamFlushIntervalMillis;
+    private final String featuresPath;
+    private final Map<String, Set<Integer>> planConfigurations;
+    private final int featureFilesThreads;
+    private final boolean attachmentsEnabled;
+    private final boolean includeAllCases;
     private final APIClient client;
     private final APIService api;
+    private final SuiteMetadataCache metadataCache;
+    private final ResultOutbox outbox;
+    private final ResultDeltaFilter deltaFilter;
+    private final RunCaseSelection caseSelection;
+    private final ShardCoordinator shards;
+    private final MetricsRegistry metrics;
+    private volatile int coordinationRunId;
 
     /**
      * Constructs a new {@code TestRailService} and initializes the client with the necessary credentials.
@@ -58,52 +90,273 @@ public class TestRailService {
      * @param client The API client to be used for interacting with TestRail
      */
     public TestRailService(APIClient client) {
+        this(client, Configuration.snapshot());
+    }
+
+    /**
+     * Constructs a new {@code TestRailService} that reads its settings from the given configuration instead of the
+     * shared one.
+     *
+     * @param client The API client to be used for interacting with TestRail
+     * @param config The configuration of this service
+     */
+    public TestRailService(APIClient client, ConfigSnapshot config) {
+        config.require(TestrailProperty.PROJECT_ID, TestrailProperty.USERNAME, TestrailProperty.PASSWORD);
+        this.config = config;
+        this.isNewRun = config.getBoolean(TestrailProperty.RUN_NEW).orElse(false);
+        this.testPlanId = config.getInteger(TestrailProperty.TEST_PLAN_ID).orElse(0);
+        this.projectID = config.getInteger(TestrailProperty.PROJECT_ID).get();
+        this.runName = config.getString(TestrailProperty.RUN_NAME).orElse("Automated test run");
+        this.closeTestPlan = config.getBoolean(TestrailProperty.CLOSE_TEST_PLAN).orElse(false);
+        this.testSuiteId = config.getInteger(TestrailProperty.TEST_SUITE_ID).orElse(0);
+        this.resultsBatchSize = config.getInteger(TestrailProperty.RESULTS_BATCH_SIZE).orElse(250);
+        this.uploadThreads = config.getInteger(TestrailProperty.RESULTS_UPLOAD_THREADS).orElse(4);
+        this.commentMaxLength = config.getInteger(TestrailProperty.RESULTS_COMMENT_MAX_LENGTH).orElse(DEFAULT_COMMENT_MAX_LENGTH);
+        this.virtualThreads = IoExecutors.isVirtual(config);
+        this.streamQueueSize = config.getInteger(TestrailProperty.RESULTS_STREAM_QUEUE_SIZE).orElse(1000);
+        this.streamFlushIntervalMillis = config.getInteger(TestrailProperty.RESULTS_STREAM_FLUSH_INTERVAL).orElse(5000);
+        this.featuresPath = config.getString(TestrailProperty.FEATURE_FILES_PATH).orElse("src/test/java/tech/automationqa/testrail/feature/");
+        this.planConfigurations = config.getString(TestrailProperty.TEST_PLAN_CONFIGURATIONS).map(PlanRunRouter::parseConfigurations).orElse(Collections.emptyMap());
+        this.featureFilesThreads = config.getInteger(TestrailProperty.FEATURE_FILES_THREADS).orElse(Runtime.getRuntime().availableProcessors());
+        this.attachmentsEnabled = config.getBoolean(TestrailProperty.ATTACHMENTS_ENABLED).orElse(false);
         this.client = client;
         this.api = new APIService(client);
+        this.shards = config.getInteger(TestrailProperty.SHARD_COUNT).orElse(1) > 1 ? createShardCoordinator() : null;
+        if (shards != null && !config.getBoolean(TestrailProperty.RUN_INCLUDE_ALL).orElse(true)) {
+            // Every case update replaces the selection, so each shard would remove the cases the others added
+            LOGGER.warn("test.run.include.all: false is ignored when publishing in shards, the shared Test Run includes all cases");
+        }
+        this.includeAllCases = shards != null || config.getBoolean(TestrailProperty.RUN_INCLUDE_ALL).orElse(true);
+        this.metadataCache = config.getBoolean(TestrailProperty.CACHE_ENABLED).orElse(false) ? createMetadataCache() : null;
+        this.outbox = config.getBoolean(TestrailProperty.RESULTS_OUTBOX_ENABLED).orElse(false) ? createOutbox() : null;
+        this.deltaFilter = new ResultDeltaFilter(api, ResultDeltaFilter.Mode.valueOf(config.getString(TestrailProperty.RESULTS_DELTA).orElse("off").toUpperCase()),
+                Paths.get(config.getString(TestrailProperty.RESULTS_DELTA_DIR).orElse("target/testrail-delta")));
+        this.caseSelection = includeAllCases ? null : new RunCaseSelection(api, config.getInteger(TestrailProperty.RUN_CASE_BATCH_SIZE).orElse(1000));
+        this.metrics = client.getMetrics();
+        metrics.record(MetricsRegistry.PHASE, "config", config.getLoadTimeNanos());
         initializeClient();
     }
 
+    /**
+     * Creates an API client for the given TestRail instance using the configured {@code http.transport}, timeouts,
+     * request compression, rate limit and retry policy.
+     *
+     * @param baseUrl The base URL of the TestRail instance
+     * @return A new API client; credentials are set once it is passed to a {@code TestRailService}
+     */
+    public static APIClient createClient(String baseUrl) {
+        return createClient(baseUrl, Configuration.snapshot());
+    }
+
+    /**
+     * Creates an API client for the given TestRail instance from the given configuration.
+     *
+     * @param baseUrl The base URL of the TestRail instance
+     * @param config  The configuration holding the HTTP settings
+     * @return A new API client; credentials are set once it is passed to a {@code TestRailService}
+     */
+    public static APIClient createClient(String baseUrl, ConfigSnapshot config) {
+        Duration connectTimeout = config.getInteger(TestrailProperty.HTTP_CONNECT_TIMEOUT).map(Duration::ofMillis).orElse(APIClient.DEFAULT_CONNECT_TIMEOUT);
+        Duration readTimeout = config.getInteger(TestrailProperty.HTTP_READ_TIMEOUT).map(Duration::ofMillis).orElse(APIClient.DEFAULT_READ_TIMEOUT);
+        HttpTransport transport = "urlconnection".equalsIgnoreCase(config.getString(TestrailProperty.HTTP_TRANSPORT).orElse("httpclient"))
+                ? new UrlConnectionTransport(connectTimeout, readTimeout)
+                : new HttpClientTransport(connectTimeout, readTimeout);
+        APIClient client = new APIClient(baseUrl, transport);
+        client.setRequestCompression(config.getBoolean(TestrailProperty.HTTP_REQUEST_GZIP).orElse(false));
+        config.getDecimal(TestrailProperty.RATE_LIMIT)
+                .ifPresent(rate -> client.setRateLimiter(new RateLimiter(rate, config.getInteger(TestrailProperty.RATE_LIMIT_BURST).orElse(5))));
+        client.setRetryPolicy(new RetryPolicy(config.getInteger(TestrailProperty.RETRY_MAX).orElse(3),
+                Duration.ofMillis(config.getInteger(TestrailProperty.RETRY_BASE_DELAY).orElse(500)),
+                Duration.ofMillis(config.getInteger(TestrailProperty.RETRY_MAX_DELAY).orElse(30000))));
+        return client;
+    }
+
+    private SuiteMetadataCache createMetadataCache() {
+        Path directory = Paths.get(config.getString(TestrailProperty.CACHE_DIR).orElse("target/testrail-cache"));
+        Duration ttl = Duration.ofMinutes(config.getInteger(TestrailProperty.CACHE_TTL).orElse(60));
+        Duration fullRefresh = Duration.ofHours(config.getInteger(TestrailProperty.CACHE_FULL_REFRESH).orElse(168));
+        return new SuiteMetadataCache(api, projectID, directory, ttl, fullRefresh);
+    }
+
+    private ShardCoordinator createShardCoordinator() {
+        int count = config.getInteger(TestrailProperty.SHARD_COUNT).get();
+        int index = config.getInteger(TestrailProperty.SHARD_INDEX)
+                .orElseThrow(() -> new IllegalStateException("TestRail configuration is missing " + TestrailProperty.SHARD_INDEX));
+        if (index < 1 || index > count) {
+            throw new IllegalStateException(TestrailProperty.SHARD_INDEX + " must be between 1 and " + count + ", was " + index);
+        }
+        String runKey = config.getString(TestrailProperty.SHARD_RUN_KEY).orElse(null);
+        if (runKey == null && isNewRun) {
+            throw new IllegalStateException("TestRail configuration is missing " + TestrailProperty.SHARD_RUN_KEY + ", which the shards name their common Test Run after");
+        }
+        Path lockDirectory = config.getString(TestrailProperty.SHARD_LOCK_DIR).map(Paths::get).orElse(null);
+        if (runKey == null && lockDirectory != null) {
+            throw new IllegalStateException("TestRail configuration is missing " + TestrailProperty.SHARD_RUN_KEY + ", which names the lock files of the build");
+        }
+        LOGGER.info("Publishing as shard {} of {}", index, count);
+        return new ShardCoordinator(api, index, count, runKey, lockDirectory);
+    }
+
+    private ResultOutbox createOutbox() {
+        Path journal = Paths.get(config.getString(TestrailProperty.RESULTS_OUTBOX_PATH).orElse("target/testrail-outbox/results.journal"));
+        try {
+            return new ResultOutbox(journal);
+        } catch (IOException e) {
+            LOGGER.error("Failed to open result outbox {}, results are sent without journaling: {}", journal, e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Initializes the API client with the username and password from configuration.
      */
     private void initializeClient() {
-        String username = getConfigurationString(TestrailProperty.USERNAME).orElseThrow(() -> new IllegalStateException("Username not configured"));
-        String password = getConfigurationString(TestrailProperty.PASSWORD).orElseThrow(() -> new IllegalStateException("Password not configured"));
+        String username = config.getString(TestrailProperty.USERNAME).orElseThrow(() -> new IllegalStateException("Username not configured"));
+        String password = config.getString(TestrailProperty.PASSWORD).orElseThrow(() -> new IllegalStateException("Password not configured"));
         client.setUser(username).setPassword(password);
     }
 
     /**
      * Adds test results to TestRail by creating a new test run or using an existing one, then
-     * uploading the results for each test case.
+     * uploading the results for each test case in concurrent chunks of {@code results.batch.size}. When
+     * {@code test.plan.configurations} is set, the results are routed to one run per configuration and all
+     * runs are uploaded in parallel.
      *
      * @param results The results of test execution to be added to TestRail
      */
     public void addResultsToTestRail(Results results) {
+        addResultsToTestRail(results::getScenarioResults, results.getReportDir());
+    }
+
+    /**
+     * Adds the given scenario results to TestRail in the same way as {@link #addResultsToTestRail(Results)}, for
+     * results that were not collected by a Karate run of this JVM.
+     *
+     * @param scenarioResults Supplies the results to be added; it is called once to check for case IDs and once
+     *                        more to map them
+     * @param reportDir       The Karate report directory the attachments are read from, or null if there is none
+     */
+    public void addResultsToTestRail(Supplier<Stream<ScenarioResult>> scenarioResults, String reportDir) {
         try {
-            Map<String, Integer> runAndSuiteIds = determineRunId();
-            int runId = runAndSuiteIds.get(TEST_RUN_ID_KEY);
-            int suiteId = runAndSuiteIds.get(TEST_SUITE_ID_KEY);
-            List<JSONObject> testCasesList = fetchTestCases(suiteId);
+            RunTarget target = metrics.time(MetricsRegistry.PHASE, "runs", this::determineRuns);
+            int suiteId = target.suiteId;
 
-            if (getConfigurationBoolean(TestrailProperty.CREATE_FEATURE_FILES).orElse(false)) {
-                generateFeatureFilesForSuite(suiteId, testCasesList);
+            if (config.getBoolean(TestrailProperty.CREATE_FEATURE_FILES).orElse(false)) {
+                long start = System.nanoTime();
+                generateFeatureFilesForSuite(suiteId, fetchTestCases(suiteId));
+                metrics.record(MetricsRegistry.PHASE, "feature_files", System.nanoTime() - start);
                 return;
             }
 
-            JSONArray resultArray = updateTestCasesWithExecutionResults(testCasesList, results);
+            TestCaseIndex caseIndex;
+            if (scenarioResults.get().allMatch(result -> TestCaseIndex.findCaseId(result.getScenario()).isPresent())) {
+                LOGGER.info("Every scenario carries a case ID, only the case IDs of suite {} are checked", suiteId);
+                caseIndex = metrics.time(MetricsRegistry.PHASE, "cases", () -> TestCaseIndex.caseIdsOnly(fetchCaseIds(suiteId)));
+            } else {
+                caseIndex = metrics.time(MetricsRegistry.PHASE, "cases", () -> new TestCaseIndex(fetchTestCases(suiteId)));
+            }
+            Map<Integer, Map<Integer, ScenarioResult>> failedByRun = attachmentsEnabled ? new HashMap<>() : null;
+            Map<Integer, JSONArray> resultsByRun = metrics.time(MetricsRegistry.PHASE, "matching", () -> updateTestCasesWithExecutionResults(caseIndex, target.router, scenarioResults, failedByRun));
+
+            // A run created just now has no earlier results to compare against
+            if (deltaFilter.getMode() != ResultDeltaFilter.Mode.OFF && !isNewRun) {
+                metrics.time(MetricsRegistry.PHASE, "delta", () -> {
+                    resultsByRun.replaceAll(deltaFilter::filter);
+                    return null;
+                });
+            }
 
-            LOGGER.info("Adding results to Test Run: {}", runId);
-            api.addResultsForCases(runId, new JSONObject().put("results", resultArray));
+            LOGGER.info("Adding results to Test Run: {}", resultsByRun.keySet());
+            ResultUploader uploader = new ResultUploader(api, resultsBatchSize, uploadThreads, outbox, virtualThreads);
+            metrics.time(MetricsRegistry.PHASE, "replay", uploader::replay);
+            uploader.setCaseSelection(caseSelection);
+            AttachmentUploader attachments = failedByRun == null ? null : createAttachmentUploader(uploader, failedByRun, reportDir);
+            ResultUploader.UploadSummary summary = metrics.time(MetricsRegistry.PHASE, "upload", () -> uploader.uploadAll(resultsByRun));
+            if (attachments != null) {
+                metrics.time(MetricsRegistry.PHASE, "attachments", attachments::finish);
+            }
+            if (summary.getFailed() > 0) {
+                LOGGER.error("Failed to add {} of {} results to TestRail", summary.getFailed(), summary.getSent() + summary.getFailed());
+            } else {
+                resultsByRun.forEach(deltaFilter::commit);
+            }
+            LOGGER.info("TestRail requests: {}", client.getStats());
         } catch (Exception e) {
             LOGGER.error("Failed to add results to TestRail: " + e.getMessage(), e);
         }
     }
 
     /**
-     * Closes the test plan in TestRail if the configuration specifies to do so.
+     * Creates the uploader that attaches the evidence of failed scenarios to their results as soon as each chunk of
+     * results has been created.
+     */
+    private AttachmentUploader createAttachmentUploader(ResultUploader uploader, Map<Integer, Map<Integer, ScenarioResult>> failedByRun, String reportDir) {
+        AttachmentUploader attachments = new AttachmentUploader(api,
+                config.getInteger(TestrailProperty.ATTACHMENTS_THREADS).orElse(4),
+                config.getInteger(TestrailProperty.ATTACHMENTS_MAX_SIZE).orElse(25) * 1024L * 1024L,
+                reportDir == null ? null : Paths.get(reportDir),
+                Paths.get(config.getString(TestrailProperty.ATTACHMENTS_DIR).orElse("target/testrail-attachments")), virtualThreads);
+        uploader.setResultListener((runId, chunk, created) -> {
+            Map<Integer, ScenarioResult> failed = failedByRun.getOrDefault(runId, Collections.emptyMap());
+            for (int i = 0; i < Math.min(chunk.length(), created.length()); i++) {
+                int caseId = chunk.getJSONObject(i).getInt("case_id");
+                ScenarioResult result = failed.get(caseId);
+                if (result != null) {
+                    attachments.submit(created.getJSONObject(i).getInt("id"), caseId, result);
+                }
+            }
+        });
+        return attachments;
+    }
+
+    /**
+     * Sends the result batches left in the outbox by earlier runs that could not reach TestRail, in the order they
+     * were written. Does nothing unless {@code results.outbox.enabled} is set.
+     *
+     * @return The number of results that are still pending or were rejected.
+     */
+    public int replayOutbox() {
+        if (outbox == null) {
+            LOGGER.warn("The result outbox is not enabled, nothing to replay");
+            return 0;
+        }
+        ResultUploader.UploadSummary summary = new ResultUploader(api, resultsBatchSize, 1, outbox, virtualThreads).replay();
+        LOGGER.info("Replayed {} results from {}, {} not sent", summary.getSent(), outbox.getJournal(), summary.getFailed());
+        return summary.getFailed();
+    }
+
+    /**
+     * Writes the request latencies, bytes, retries and phase timings collected during the run to {@code metrics.dir}
+     * as {@code metrics.json} and/or {@code metrics.prom}, and logs a one-line summary, unless
+     * {@code metrics.enabled} is false.
+     */
+    public void exportMetrics() {
+        if (!config.getBoolean(TestrailProperty.METRICS_ENABLED).orElse(true)) {
+            return;
+        }
+        Path directory = Paths.get(config.getString(TestrailProperty.METRICS_DIR).orElse("target/testrail-metrics"));
+        String format = config.getString(TestrailProperty.METRICS_FORMAT).orElse("both").toLowerCase();
+        try {
+            metrics.export(directory, !"prometheus".equals(format), !"json".equals(format));
+            LOGGER.debug("TestRail metrics written to {}", directory);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write TestRail metrics to {}: {}", directory, e.getMessage());
+        }
+        if (config.getBoolean(TestrailProperty.METRICS_LOG_SUMMARY).orElse(true)) {
+            LOGGER.info("TestRail metrics: {}", metrics.summary());
+        }
+    }
+
+    /**
+     * Closes the test plan in TestRail if the configuration specifies to do so. When publishing in shards, only
+     * the last shard to finish closes it.
      */
     public void closeTestPlanIfRequired() {
         if (closeTestPlan) {
+            if (shards != null && !shards.finish(coordinationRunId)) {
+                LOGGER.info("Test Plan {} is left to be closed by the last shard", testPlanId);
+                return;
+            }
             LOGGER.info("Closing Test Plan: {}", testPlanId);
             try {
                 api.closePlan(testPlanId);
@@ -114,37 +367,143 @@ public class TestRailService {
     }
 
     /**
-     * Updates the JSON array of test cases with the execution results from the test suite.
+     * Updates the JSON array of test cases with the execution results from the test suite. Scenarios are matched
+     * through a {@link TestCaseIndex} built once per run; scenarios that are not part of the suite are skipped and
+     * reported together with any ambiguous titles once all results have been processed.
      *
-     * @param testCasesList A list of JSONObjects representing the test cases
-     * @param results       The results of the test execution
-     * @return JSONArray with the results of the test cases updated
+     * @param caseIndex The index of the suite's test cases
+     * @param router    Decides which test run each result belongs to
+     * @param results   The results of the test execution
+     * @param failedByRun Collects the failed scenarios by run and case ID, or null if they are not needed
+     * @return The results of the test cases, keyed by the ID of the test run they belong to
      */
-    private static JSONArray updateTestCasesWithExecutionResults(List<JSONObject> testCasesList, Results results) {
-        JSONArray resultList = new JSONArray();
+    private Map<Integer, JSONArray> updateTestCasesWithExecutionResults(TestCaseIndex caseIndex, PlanRunRouter router, Supplier<Stream<ScenarioResult>> results,
+                                                                        Map<Integer, Map<Integer, ScenarioResult>> failedByRun) {
+        Map<Integer, JSONArray> resultsByRun = new LinkedHashMap<>();
+        router.getRunIds().forEach(runId -> resultsByRun.put(runId, new JSONArray()));
+
+        results.get().forEach(result -> buildScenarioResultJson(result, caseIndex, commentMaxLength)
+                .ifPresent(json -> router.route(result.getScenario()).ifPresent(runId -> {
+                    resultsByRun.get(runId).put(json);
+                    if (failedByRun != null && result.isFailed()) {
+                        failedByRun.computeIfAbsent(runId, id -> new HashMap<>()).put(json.getInt("case_id"), result);
+                    }
+                })));
+
+        caseIndex.getDiagnostics().ifPresent(report -> LOGGER.warn("Test suite {}: {}", testSuiteId, report));
+        router.getDiagnostics().ifPresent(report -> LOGGER.warn("Test Plan {}: {}", testPlanId, report));
+        return resultsByRun;
+    }
 
-        results.getScenarioResults().forEach(result -> {
-            Scenario scenario = result.getScenario();
-            String scenarioName = scenario.getName();
+    /**
+     * Builds the TestRail result for a single scenario.
+     *
+     * @param result    The result of the executed scenario
+     * @param caseIndex The index used to find the scenario's test case
+     * @param commentMaxLength The maximum length of the result's comment
+     * @return The result JSON, or empty if the scenario is not part of the suite
+     */
+    static Optional<JSONObject> buildScenarioResultJson(ScenarioResult result, TestCaseIndex caseIndex, int commentMaxLength) {
+        Scenario scenario = result.getScenario();
+        OptionalInt caseId = caseIndex.resolve(scenario);
+        if (caseId.isEmpty()) {
+            return Optional.empty();
+        }
 
-            // Find the matching test case based on the scenario name
-            JSONObject matchingTestCase = testCasesList.stream().filter(tc -> tc.getString("title").equals(scenarioName)).findFirst().orElseThrow(() -> new RuntimeException("The scenario " + scenarioName + " is not part of the test suite " + testSuiteId + ". Please check your configuration."));
+        StepsSummary stepsSummary = summarize(result.getStepResults(), commentMaxLength);
 
-            HashMap<String, Object> stepsDetails = getStepsDetails(result.getStepResults());
+        // There's a bug in the testrail api that doesn't allow an elapsed time of 0, it's fixed in recent versions, but we are using an old version.
+        String elapsedTime = "1s";
+        if (result.getDurationMillis() != 0) {
+            elapsedTime = result.getDurationMillis() + "s";
+        }
 
-            // There's a bug in the testrail api that doesn't allow an elapsed time of 0, it's fixed in recent versions, but we are using an old version.
-            String elapsedTime = "1s";
-            if (result.getDurationMillis() != 0) {
-                elapsedTime = result.getDurationMillis() + "s";
-            }
+        try {
+            return Optional.of(buildTestCaseResultJson(caseId.getAsInt(), stepsSummary.getStatusId(), stepsSummary.getComment(), elapsedTime));
+        } catch (JSONException e) {
+            LOGGER.error("Failed to create JSON result for test case: " + scenario.getName(), e);
+            return Optional.empty();
+        }
+    }
 
-            try {
-                resultList.put(buildTestCaseResultJson(matchingTestCase.getInt("id"), (Integer) stepsDetails.get("status_id"), stepsDetails.get("comment").toString(), elapsedTime));
-            } catch (JSONException e) {
-                LOGGER.error("Failed to create JSON result for test case: " + scenarioName, e);
-            }
-        });
-        return resultList;
+    /**
+     * Resolves the test run and the suite's test cases up front and starts a {@link StreamingResultPublisher}
+     * that uploads results while the tests are still running. The publisher must be registered as a Karate hook
+     * and finished once the run completes.
+     *
+     * @return The started publisher
+     */
+    public StreamingResultPublisher startStreamingPublisher() {
+        RunTarget target = metrics.time(MetricsRegistry.PHASE, "runs", this::determineRuns);
+        TestCaseIndex caseIndex = metrics.time(MetricsRegistry.PHASE, "cases", () -> new TestCaseIndex(fetchTestCases(target.suiteId)));
+        ResultUploader uploader = new ResultUploader(api, resultsBatchSize, 1, outbox, virtualThreads);
+        metrics.time(MetricsRegistry.PHASE, "replay", uploader::replay);
+        uploader.setCaseSelection(caseSelection);
+        StreamingResultPublisher publisher = new StreamingResultPublisher(uploader, target.router, caseIndex, resultsBatchSize, streamQueueSize, streamFlushIntervalMillis,
+                commentMaxLength, virtualThreads);
+        publisher.start();
+        return publisher;
+    }
+
+    /**
+     * Publishes the results of an earlier run from its JSON reports, without running any tests. The reports are
+     * read in parallel, {@code report.read.threads} files at a time, and the scenarios go through the same
+     * {@link StreamingResultPublisher} used while tests run, whose bounded queue holds the readers back when the
+     * upload falls behind. Memory therefore depends on the queue and batch sizes, not on the size of the report.
+     *
+     * @param reportDirectory The directory holding the Karate or Cucumber JSON reports
+     * @return true if every report was read and every result was uploaded
+     */
+    public boolean publishReport(Path reportDirectory) {
+        StreamingResultPublisher publisher = startStreamingPublisher();
+        ReportResultReader reader = new ReportResultReader(reportDirectory,
+                config.getInteger(TestrailProperty.REPORT_READ_THREADS).orElse(Runtime.getRuntime().availableProcessors()), virtualThreads);
+        ReportResultReader.ReadSummary read;
+        try {
+            read = metrics.time(MetricsRegistry.PHASE, "read", () -> reader.read(publisher::offer));
+        } finally {
+            publisher.finish();
+        }
+        if (!read.getFailedFiles().isEmpty()) {
+            LOGGER.error("{} of {} report files could not be read: {}", read.getFailedFiles().size(), read.getFiles(), read.getFailedFiles());
+        }
+        return read.getFailedFiles().isEmpty() && publisher.getFailed() == 0;
+    }
+
+    /**
+     * @return true if results should be streamed to TestRail while the tests are running.
+     */
+    public boolean isStreamingEnabled() {
+        return config.getBoolean(TestrailProperty.RESULTS_STREAM).orElse(false)
+                && !config.getBoolean(TestrailProperty.CREATE_FEATURE_FILES).orElse(false);
+    }
+
+    /**
+     * Determines the suite and the test runs the results go to: one run per entry of {@code test.plan.configurations}
+     * when it is set, or else the single run of {@link #determineRunId()}.
+     *
+     * @return The suite ID and a router over the runs
+     */
+    private RunTarget determineRuns() {
+        if (testPlanId == 0 || planConfigurations.isEmpty()) {
+            Map<String, Integer> runAndSuiteIds = determineRunId();
+            coordinationRunId = runAndSuiteIds.get(TEST_RUN_ID_KEY);
+            return new RunTarget(runAndSuiteIds.get(TEST_SUITE_ID_KEY), PlanRunRouter.singleRun(runAndSuiteIds.get(TEST_RUN_ID_KEY)));
+        }
+        int suiteId = config.getInteger(TestrailProperty.TEST_SUITE_ID).orElseThrow(() -> new RuntimeException(TEST_SUITE_ID_NOT_CONFIGURED));
+        Map<String, Integer> runsByLabel;
+        if (isNewRun) {
+            LOGGER.info("Creating {} Test Runs in Test Plan {}", planConfigurations.size(), testPlanId);
+            JSONObject entryBody = PlanRunRouter.buildPlanEntry(suiteId, newRunName(), planConfigurations, includeAllCases);
+            JSONObject entry = shards != null ? shards.findOrCreatePlanEntry(testPlanId, entryBody) : api.addRunToTestPlan(testPlanId, entryBody);
+            runsByLabel = PlanRunRouter.matchRuns(new JSONArray().put(entry), suiteId, planConfigurations);
+        } else {
+            runsByLabel = PlanRunRouter.matchRuns(api.getPlan(testPlanId).getJSONArray("entries"), suiteId, planConfigurations);
+        }
+        LOGGER.info("Test Runs: {}", runsByLabel);
+        LOGGER.info("Test Suite ID: {}", suiteId);
+        coordinationRunId = runsByLabel.values().stream().mapToInt(Integer::intValue).min().orElse(0);
+        return new RunTarget(suiteId, new PlanRunRouter(runsByLabel, config.getProfile()));
     }
 
     /**
@@ -155,14 +514,14 @@ public class TestRailService {
     private Map<String, Integer> determineRunId() {
         Map<String, Integer> result = new HashMap<>();
         if (isNewRun) {
-            int suiteId = getConfigurationInteger(TestrailProperty.TEST_SUITE_ID).orElseThrow(() -> new RuntimeException(TEST_SUITE_ID_NOT_CONFIGURED));
+            int suiteId = config.getInteger(TestrailProperty.TEST_SUITE_ID).orElseThrow(() -> new RuntimeException(TEST_SUITE_ID_NOT_CONFIGURED));
             JSONObject run = createNewTestRun(suiteId);
             int runId = extractRunId(run);
             result.put(TEST_RUN_ID_KEY, runId);
             result.put(TEST_SUITE_ID_KEY, suiteId);
         } else {
-            int runId = getConfigurationInteger(TestrailProperty.TEST_RUN_ID).orElseThrow(() -> new RuntimeException(TEST_RUN_ID_NOT_CONFIGURED));
-            int suiteId = api.getTestRun(runId).getInt(TEST_SUITE_ID_KEY);
+            int runId = config.getInteger(TestrailProperty.TEST_RUN_ID).orElseThrow(() -> new RuntimeException(TEST_RUN_ID_NOT_CONFIGURED));
+            int suiteId = metadataCache != null ? metadataCache.getRunSuiteId(runId) : api.getTestRun(runId).getInt(TEST_SUITE_ID_KEY);
             result.put(TEST_RUN_ID_KEY, runId);
             result.put(TEST_SUITE_ID_KEY, suiteId);
         }
@@ -186,151 +545,103 @@ public class TestRailService {
     }
 
     /**
-     * Generates feature files for a given test suite using the provided test cases.
+     * Generates feature files for a given test suite using the provided test cases. Sections are written in
+     * parallel to {@code feature.files.path} and files whose content has not changed are left untouched.
      *
      * @param suiteId    The ID of the test suite for which to generate feature files
-     * @param testCases  A list of JSONObjects representing the test cases
+     * @param testCases  The test cases of the suite
      * @throws IOException If there is an error writing the feature files
      */
-    public void generateFeatureFilesForSuite(int suiteId, List<JSONObject> testCases) throws IOException {
-        Map<String, List<String>> sectionScenarios = organizeScenariosBySections(testCases, getTestSuiteSections(suiteId));
-        writeFeatureFiles(sectionScenarios);
+    public void generateFeatureFilesForSuite(int suiteId, Iterable<TestCase> testCases) throws IOException {
+        Map<String, List<TestCase>> casesBySection = FeatureFileWriter.groupBySection(testCases, getTestSuiteSections(suiteId));
+        new FeatureFileWriter(Paths.get(featuresPath), featureFilesThreads).write(casesBySection);
     }
 
     /**
-     * Fetches test cases from TestRail for a given test suite.
+     * Fetches test cases from TestRail for a given test suite. The cases are streamed page by page while they are
+     * iterated, so the full suite is never held in memory at once, unless {@code cache.enabled} is set, in which
+     * case they are served from the local {@link SuiteMetadataCache}.
      *
      * @param suiteId The ID of the test suite for which to fetch test cases
-     * @return A list of JSONObjects representing the test cases
+     * @return A single-pass Iterable over the test cases
      */
-    private List<JSONObject> fetchTestCases(int suiteId) {
-        JSONArray testCasesJsonArray = api.getCases(projectID, suiteId);
-        return IntStream.range(0, testCasesJsonArray.length()).mapToObj(testCasesJsonArray::getJSONObject).collect(Collectors.toList());
+    private Iterable<TestCase> fetchTestCases(int suiteId) {
+        if (metadataCache != null) {
+            return metadataCache.getCases(suiteId);
+        }
+        return api.streamCases(projectID, suiteId);
     }
 
-
     /**
-     * Retrieves the sections for a given test suite from TestRail.
+     * Fetches only the IDs of the test cases of a given test suite, from the local {@link SuiteMetadataCache} when
+     * {@code cache.enabled} is set.
      *
-     * @param testSuiteId The ID of the test suite for which to retrieve sections
-     * @return A list of JSONObjects representing the sections
+     * @param suiteId The ID of the test suite for which to fetch the case IDs
+     * @return A single-pass Iterable over the case IDs
      */
-    private Map<String, Integer> getTestSuiteSections(int testSuiteId) {
-        JSONArray sectionsArray = api.getAllSections(projectID, testSuiteId);
-
-        LOGGER.info("Retrieving current suite sections");
-        return IntStream.range(0, sectionsArray.length()).mapToObj(sectionsArray::getJSONObject).collect(Collectors.toMap(section -> section.getString("name"), section -> section.getInt("id")));
+    private Iterable<Integer> fetchCaseIds(int suiteId) {
+        if (metadataCache != null) {
+            return () -> metadataCache.getCases(suiteId).stream().map(TestCase::getId).iterator();
+        }
+        return api.streamCaseIds(projectID, suiteId);
     }
 
 
     /**
-     * Organizes scenarios by their respective sections. This method maps each test case to the section
-     * it belongs to based on the section IDs provided in the test cases and the section names found in the
-     * sections map.
+     * Retrieves the sections for a given test suite from TestRail.
      *
-     * @param testCases   The list of test case JSONObjects to organize.
-     * @param sectionsMap A map of section names to their corresponding IDs.
-     * @return A map where each section name is associated with a list of scenarios that belong to it.
+     * @param testSuiteId The ID of the test suite for which to retrieve sections
+     * @return A map of section IDs to their corresponding names
      */
-    private Map<String, List<String>> organizeScenariosBySections(List<JSONObject> testCases, Map<String, Integer> sectionsMap) {
-        // Flip the sectionsMap to map IDs back to names for easier lookup
-        Map<Integer, String> idToSectionNameMap = sectionsMap.entrySet().stream().collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey));
-
-        Map<String, List<String>> sectionScenarios = new HashMap<>();
-        for (JSONObject testCase : testCases) {
-            int sectionId = testCase.getInt("section_id");
-            String sectionName = idToSectionNameMap.get(sectionId);
-            if (sectionName == null) {
-                LOGGER.warn("Section ID {} not found in sections map.", sectionId);
-                continue; // Skip this test case if the section ID is not found
-            }
-            String scenario = formatScenario(testCase);
-            sectionScenarios.computeIfAbsent(sectionName, k -> new ArrayList<>()).add(scenario);
+    private Map<Integer, String> getTestSuiteSections(int testSuiteId) {
+        LOGGER.info("Retrieving current suite sections");
+        Map<Integer, String> sections = new HashMap<>();
+        Iterable<Section> suiteSections = metadataCache != null ? metadataCache.getSections(testSuiteId) : api.streamSections(projectID, testSuiteId);
+        for (Section section : suiteSections) {
+            sections.put(section.getId(), section.getName());
         }
-        return sectionScenarios;
+        return sections;
     }
 
 
     /**
-     * Formats a single scenario from the given test case JSON object. It constructs a scenario string with
-     * given, when, and then steps.
+     * Creates a new test run within TestRail. If a test plan ID is configured, the new test run is added to
+     * the test plan. Otherwise, it is added to the project. With {@code test.run.include.all: false} the run starts
+     * without cases, and the executed ones are added as their results are uploaded. When publishing in shards,
+     * the run is shared and only created by the first shard that does not find it.
      *
-     * @param testCase The JSON object representing a single test case.
-     * @return A formatted scenario as a String.
+     * @param suiteId The ID of the test suite for which to create a new test run.
+     * @return A JSONObject containing details of the newly created test run.
      */
-    private String formatScenario(JSONObject testCase) {
-        String title = testCase.optString("title", "Untitled");
-        JSONArray stepsSeparated = testCase.optJSONArray("custom_steps_separated");
-        StringBuilder scenarioBuilder = new StringBuilder();
-
-        // Start the scenario with the title
-        scenarioBuilder.append("Scenario: ").append(title).append("\n");
-
-        if (stepsSeparated != null) {
-            for (int i = 0; i < stepsSeparated.length(); i++) {
-                JSONObject step = stepsSeparated.getJSONObject(i);
-                String content = step.optString("content", "No action provided.").replaceAll("\\n", " ").trim();
-                String expected = step.optString("expected", "").replaceAll("\\n", " ").trim();
-
-                // Append Given/When/Then for each step
-                if (i == 0) {
-                    scenarioBuilder.append("Given ").append(content).append("\n");
-                } else {
-                    scenarioBuilder.append("And ").append(content).append("\n");
-                }
+    private JSONObject createNewTestRun(int suiteId) {
+        LOGGER.info("Creating new Test Run");
+        JSONObject runBody = new JSONObject().put("name", newRunName()).put(TEST_SUITE_ID_KEY, suiteId);
+        if (!includeAllCases) {
+            runBody.put("include_all", false).put("case_ids", new JSONArray());
+        }
 
-                if (!expected.isEmpty()) {
-                    scenarioBuilder.append("Then ").append(expected).append("\n");
-                }
-            }
+        if (testPlanId != 0) {
+            return shards != null ? shards.findOrCreatePlanEntry(testPlanId, runBody) : api.addRunToTestPlan(testPlanId, runBody);
         } else {
-            scenarioBuilder.append("Given No steps defined.\n");
+            return shards != null ? shards.findOrCreateRun(projectID, runBody) : api.addRunToProject(projectID, runBody);
         }
-
-        return scenarioBuilder.toString().trim(); // Trim to remove any trailing newlines at the end
     }
 
     /**
-     * Writes feature files for each section with its associated scenarios to the specified features path.
-     * It names the feature files based on the section names, sanitizing the file names to be filesystem-friendly.
-     *
-     * @param sectionScenarios A map with section names as keys and associated scenarios as values.
-     * @throws IOException If an I/O error occurs writing to or creating the feature files.
+     * @return The name of a new run: the configured name followed by the time, or by {@code shard.run.key} when
+     * the shards of a build share the run.
      */
-    private void writeFeatureFiles(Map<String, List<String>> sectionScenarios) throws IOException {
-        for (Map.Entry<String, List<String>> entry : sectionScenarios.entrySet()) {
-            String featureFileName = entry.getKey().trim() // Trim the text
-                    .replaceAll("\\s+", "_") // Replace one or more whitespace characters with an underscore
-                    .replaceAll("[^a-zA-Z0-9_]", "") // Remove any character that is not alphanumeric or an underscore
-                    .toLowerCase() // Convert to lower case
-                    .replaceAll("_+", "_") // Replace multiple underscores with a single underscore
-                    + ".feature";
-            Path featureFilePath = Paths.get(featuresPath + featureFileName);
-
-            List<String> featureContent = new ArrayList<>();
-            featureContent.add("Feature: " + entry.getKey());
-            entry.getValue().forEach(scenario -> featureContent.add(scenario + "\n"));
-
-            Files.write(featureFilePath, featureContent);
-            System.out.println("Feature file created: " + featureFilePath);
-        }
+    private String newRunName() {
+        return shards != null ? shards.getRunName(runName) : runName + " " + Timestamp.from(Instant.now());
     }
 
-    /**
-     * Creates a new test run within TestRail. If a test plan ID is configured, the new test run is added to
-     * the test plan. Otherwise, it is added to the project.
-     *
-     * @param suiteId The ID of the test suite for which to create a new test run.
-     * @return A JSONObject containing details of the newly created test run.
-     */
-    private JSONObject createNewTestRun(int suiteId) {
-        LOGGER.info("Creating new Test Run");
-        JSONObject runBody = new JSONObject().put("name", runName + " " + Timestamp.from(Instant.now())).put(TEST_SUITE_ID_KEY, suiteId);
+    private static class RunTarget {
+        private final int suiteId;
+        private final PlanRunRouter router;
 
-        if (testPlanId != 0) {
-            return api.addRunToTestPlan(testPlanId, runBody);
-        } else {
-            return api.addRunToProject(projectID, runBody);
+        RunTarget(int suiteId, PlanRunRouter router) {
+            this.suiteId = suiteId;
+            this.router = router;
         }
     }
 }